@@ -0,0 +1,62 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Data of benchmarks, shaped as data of JSONPlaceholder.
+ *
+ * @author Tomas Hanus
+ */
+final class BenchmarkData {
+
+    private static final String TITLE = "sunt aut facere repellat provident occaecati excepturi optio reprehenderit";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates user with posts.
+     *
+     * @param id        of user
+     * @param postCount count of posts
+     * @return user
+     */
+    static User user(final long id, final int postCount) {
+        return new User(id, "Leanne Graham", "Bret", "Sincere@april.biz", posts(id, postCount));
+    }
+
+    /**
+     * Creates posts of user.
+     *
+     * @param userId    of user
+     * @param postCount count of posts
+     * @return posts
+     */
+    static List<Post> posts(final long userId, final int postCount) {
+        final List<Post> posts = new ArrayList<>(postCount);
+        for (int i = 1; i <= postCount; i++) {
+            posts.add(new Post(userId * 1000 + i, TITLE));
+        }
+        return posts;
+    }
+}
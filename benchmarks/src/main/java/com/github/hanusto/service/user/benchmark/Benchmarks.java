@@ -0,0 +1,59 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runner of benchmarks, results are written as JSON to {@value #RESULT_FILE} unless other format is requested.
+ * <p>
+ * All arguments are passed to JMH, e.g. {@code -f 1 -wi 1 JsonCodecBenchmark}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+public final class Benchmarks {
+
+    private static final String RESULT_FORMAT = "-rf";
+    private static final String RESULT_FILE_OPTION = "-rff";
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs benchmarks.
+     *
+     * @param args arguments of JMH
+     * @throws Exception if benchmarks fail
+     */
+    public static void main(String[] args) throws Exception {
+        final List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains(RESULT_FORMAT)) {
+            arguments.addAll(Arrays.asList(RESULT_FORMAT, "json"));
+        }
+        if (!arguments.contains(RESULT_FILE_OPTION)) {
+            arguments.addAll(Arrays.asList(RESULT_FILE_OPTION, RESULT_FILE));
+        }
+
+        Main.main(arguments.toArray(new String[0]));
+    }
+}
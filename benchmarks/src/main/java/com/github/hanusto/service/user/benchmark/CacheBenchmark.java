@@ -0,0 +1,122 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.cache.CachingUserDataProvider;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Lookups of cached users, Spring {@link ConcurrentMapCache} (former {@code @Cacheable} path) versus Caffeine.
+ * <p>
+ * Former path cached {@code Mono<User>} returned by provider in Guava backed {@link ConcurrentMapCache}, so it is
+ * benchmarked the same way: cached {@link Mono} is looked up and resolved. There the cached {@link Mono} was cold,
+ * so every hit subscribed remote web server again, benchmark resolves it from memory and measures only cache overhead.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CacheBenchmark {
+
+    /**
+     * Count of cached users.
+     */
+    @Param({"100", "10000"})
+    public int size;
+
+    private ConcurrentMapCache concurrentMapCache;
+    private Cache<Long, User> caffeineCache;
+    private CachingUserDataProvider cachingProvider;
+
+    @Setup
+    public void setup() {
+        final UserDataProvider delegate = id -> Mono.just(BenchmarkData.user(id, 10));
+
+        concurrentMapCache = new ConcurrentMapCache("userProfiles",
+                CacheBuilder.newBuilder()
+                            .expireAfterWrite(1, TimeUnit.HOURS)
+                            .build()
+                            .asMap(), false);
+        caffeineCache = Caffeine.newBuilder().maximumSize(size).build();
+        cachingProvider = new CachingUserDataProvider(delegate, cachingConfig(), new SimpleMeterRegistry());
+
+        for (long id = 1; id <= size; id++) {
+            final User user = BenchmarkData.user(id, 10);
+            concurrentMapCache.put(id, delegate.getById(id));
+            caffeineCache.put(id, user);
+            cachingProvider.getById(id).block();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public User concurrentMapCache() {
+        return ((Mono<User>) concurrentMapCache.get(nextId()).get()).block();
+    }
+
+    @Benchmark
+    public User caffeineCache() {
+        return caffeineCache.getIfPresent(nextId());
+    }
+
+    /**
+     * Lookup through reactive API of {@link CachingUserDataProvider}, as used by routes.
+     */
+    @Benchmark
+    public User cachingProvider() {
+        return cachingProvider.getById(nextId()).block();
+    }
+
+    private long nextId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    private CachingUserDataProvider.Config cachingConfig() {
+        final CachingUserDataProvider.Config config = new CachingUserDataProvider.Config();
+        config.setMaximumSize(size);
+        return config;
+    }
+}
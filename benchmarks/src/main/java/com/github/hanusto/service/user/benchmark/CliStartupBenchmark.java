@@ -0,0 +1,174 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Startup of packaged CLI, wall time of {@code java -jar user-service-ci.jar --userId=1} until the process exits,
+ * run against in-process stub of upstream.
+ * <p>
+ * Directory with packaged CLI is given by system property {@code cli.dir}, default is {@code cli/target}. The CLI is
+ * launched by {@code java} of JVM running the benchmark, archive of class data sharing requires JDK 11 or later and
+ * CLI packaged by the same JDK.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CliStartupBenchmark {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final String CLI_JAR = "user-service-ci.jar";
+    private static final String CDS_ARCHIVE = "user-service-ci.jsa";
+    private static final int POST_COUNT = 10;
+
+    /**
+     * Whether class data sharing archive of the CLI is used.
+     */
+    @Param({"false", "true"})
+    public boolean cds;
+
+    /**
+     * Whether only C1 compiler is used, it compiles faster what pays off in short run.
+     */
+    @Param({"false", "true"})
+    public boolean c1Only;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private DisposableServer upstream;
+    private ProcessBuilder cli;
+
+    @Setup
+    public void setup() {
+        final File cliDir = Paths.get(System.getProperty("cli.dir", "cli/target")).toAbsolutePath().toFile();
+        if (!new File(cliDir, CLI_JAR).isFile()) {
+            throw new IllegalStateException("Packaged CLI not found in: " + cliDir);
+        }
+        if (cds && !new File(cliDir, CDS_ARCHIVE).isFile()) {
+            throw new IllegalStateException("Class data sharing archive not found in: " + cliDir + ", package CLI by JDK 11+ with -Pcds");
+        }
+
+        upstream = HttpServer
+                .create()
+                .host(LOCALHOST)
+                .port(0)
+                .handle((request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE)
+                        .sendString(Mono.fromCallable(() -> upstreamResponse(request.uri()))))
+                .bindNow();
+
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (cds) {
+            // archive is valid only for the same class path, so the CLI runs from its directory
+            command.add("-Xshare:on");
+            command.add("-XX:SharedArchiveFile=" + CDS_ARCHIVE);
+        }
+        if (c1Only) {
+            command.add("-XX:TieredStopAtLevel=1");
+        }
+        command.add("-jar");
+        command.add(CLI_JAR);
+        command.add("--userId=1");
+        command.add("--baseUrl=http://" + LOCALHOST + ":" + upstream.port() + "/");
+
+        cli = new ProcessBuilder(command)
+                .directory(cliDir)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        upstream.disposeNow();
+    }
+
+    @Benchmark
+    public String startup() throws IOException, InterruptedException {
+        final Process process = cli.start();
+        final String output = read(process.getInputStream());
+        if (process.waitFor() != 0 || output.isEmpty()) {
+            throw new IllegalStateException("CLI failed, exit status: " + process.exitValue());
+        }
+        return output;
+    }
+
+    private static String read(final InputStream input) throws IOException {
+        try (InputStream in = input) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        }
+    }
+
+    /**
+     * Responds as users and posts resources of JSONPlaceholder.
+     */
+    private String upstreamResponse(final String uri) throws JsonProcessingException {
+        final UriComponentsBuilder components = UriComponentsBuilder.fromUriString(uri);
+        final String path = components.build().getPath();
+
+        if (path.startsWith("/users/")) {
+            final long id = Long.parseLong(path.substring("/users/".length()));
+            return objectMapper.writeValueAsString(BenchmarkData.user(id, 0));
+        }
+
+        final long userId = Long.parseLong(components.build().getQueryParams().getFirst("userId"));
+        return objectMapper.writeValueAsString(BenchmarkData.posts(userId, POST_COUNT));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.hanusto.service.user.cache.EncodedProfileCache;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Decoding and encoding of {@link User} with posts as JSON.
+ *
+ * @author Tomas Hanus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    /**
+     * Count of posts of user, JSONPlaceholder users have 10 posts.
+     */
+    @Param({"0", "10", "100"})
+    public int postCount;
+
+    private ObjectMapper objectMapper;
+    private EncodedProfileCache encodedProfileCache;
+    private User user;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        encodedProfileCache = new EncodedProfileCache(objectMapper, new EncodedProfileCache.Config());
+        user = BenchmarkData.user(1, postCount);
+        json = objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User decode() throws IOException {
+        return objectMapper.readValue(json, User.class);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    /**
+     * Encoding served by cache of encoded profiles, as on {@code /profiles/{id}} route.
+     */
+    @Benchmark
+    public int encodeCached() {
+        return encodedProfileCache.get(user).size();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import com.github.hanusto.service.user.Application;
+
+/**
+ * Route {@code /profiles/{id}} end to end, the service runs in process against in-process stub of upstream.
+ *
+ * @author Tomas Hanus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RouteBenchmark {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final int USER_COUNT = 10;
+    private static final int POST_COUNT = 10;
+
+    /**
+     * Whether profiles are cached, otherwise every request calls upstream.
+     */
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private DisposableServer upstream;
+    private ConfigurableApplicationContext service;
+    private WebClient client;
+
+    @Setup
+    public void setup() {
+        upstream = HttpServer
+                .create()
+                .host(LOCALHOST)
+                .port(0)
+                .handle((request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE)
+                        .sendString(Mono.fromCallable(() -> upstreamResponse(request.uri()))))
+                .bindNow();
+
+        // arguments override application.yml of service
+        service = new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0",
+                        "--logging.level.com.github.hanusto=WARN",
+                        "--hanusto.user-service.data-provider.baseUrl=http://" + LOCALHOST + ":" + upstream.port() + "/",
+                        "--hanusto.user-service.cache.enabled=" + cache,
+                        "--hanusto.user-service.concurrency-limit.enabled=false");
+
+        client = WebClient.create("http://" + LOCALHOST + ":" + service.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+        upstream.disposeNow();
+    }
+
+    @Benchmark
+    public byte[] profile() {
+        return client.get()
+                     .uri("/profiles/{id}", ThreadLocalRandom.current().nextInt(USER_COUNT) + 1)
+                     .accept(MediaType.APPLICATION_JSON)
+                     .retrieve()
+                     .bodyToMono(byte[].class)
+                     .block();
+    }
+
+    /**
+     * Responds as users and posts resources of JSONPlaceholder.
+     */
+    private String upstreamResponse(final String uri) throws JsonProcessingException {
+        final UriComponentsBuilder components = UriComponentsBuilder.fromUriString(uri);
+        final String path = components.build().getPath();
+
+        if (path.startsWith("/users/")) {
+            final long id = Long.parseLong(path.substring("/users/".length()));
+            return objectMapper.writeValueAsString(BenchmarkData.user(id, 0));
+        }
+
+        final long userId = Long.parseLong(components.build().getQueryParams().getFirst("userId"));
+        return objectMapper.writeValueAsString(BenchmarkData.posts(userId, POST_COUNT));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Composition of user and posts by {@link Mono#zip(Mono, Mono, java.util.function.BiFunction)} as in
+ * {@code JSONPlaceholderUserDataProvider#getById}, with and without switch to parallel scheduler.
+ *
+ * @author Tomas Hanus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipBenchmark {
+
+    /**
+     * Whether composition is subscribed on parallel scheduler.
+     */
+    @Param({"false", "true"})
+    public boolean subscribeOn;
+
+    private User user;
+    private List<Post> posts;
+
+    @Setup
+    public void setup() {
+        user = BenchmarkData.user(1, 0);
+        posts = BenchmarkData.posts(1, 10);
+    }
+
+    @Benchmark
+    public User zip() {
+        final Mono<User> composed = Mono.zip(
+                Mono.fromCallable(() -> new User(user.getId(), user.getName(), user.getUsername(), user.getEmail(), null)),
+                Mono.fromCallable(() -> posts),
+                (user1, posts1) -> {
+                    user1.setPosts(posts1);
+                    return user1;
+                });
+
+        return (subscribeOn ? composed.subscribeOn(Schedulers.parallel()) : composed).block();
+    }
+}
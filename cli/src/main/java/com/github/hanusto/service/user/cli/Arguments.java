@@ -0,0 +1,125 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arguments of CLI, option is given as {@code --name=value} or as flag {@code --name}, other arguments are ignored.
+ * Option can be repeated, its values are kept in given order.
+ * <p>
+ * It is minimal replacement of {@code DefaultApplicationArguments} of Spring Boot, so CLI does not load Spring Boot on startup.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class Arguments {
+
+    private static final String OPTION_PREFIX = "--";
+    private static final char VALUE_SEPARATOR = '=';
+
+    private final Map<String, List<String>> options = new LinkedHashMap<>();
+
+    /**
+     * Parses arguments.
+     *
+     * @param args of CLI
+     * @throws IllegalArgumentException if option has no name
+     */
+    Arguments(final String... args) {
+        for (String arg : args) {
+            if (!arg.startsWith(OPTION_PREFIX)) {
+                continue;
+            }
+
+            final int separator = arg.indexOf(VALUE_SEPARATOR);
+            final String name = separator < 0 ? arg.substring(OPTION_PREFIX.length()) : arg.substring(OPTION_PREFIX.length(), separator);
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Invalid argument syntax: " + arg);
+            }
+
+            final List<String> values = options.computeIfAbsent(name, ignored -> new ArrayList<>());
+            if (separator >= 0) {
+                values.add(arg.substring(separator + 1));
+            }
+        }
+    }
+
+    /**
+     * Checks whether option is present.
+     *
+     * @param name of option
+     * @return {@code true} if option is present, with or without value
+     */
+    boolean containsOption(final String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Gets values of option.
+     *
+     * @param name of option
+     * @return values in given order, empty list if option is flag, {@code null} if option is not present
+     */
+    List<String> getOptionValues(final String name) {
+        final List<String> values = options.get(name);
+        return values == null ? null : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Gets the last value of option.
+     *
+     * @param name         of option
+     * @param defaultValue if option has no value
+     * @return value
+     */
+    String getOptionValue(final String name, final String defaultValue) {
+        final List<String> values = options.get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(values.size() - 1);
+    }
+
+    /**
+     * Gets the last value of option as positive number.
+     *
+     * @param name         of option
+     * @param defaultValue if option has no value
+     * @return value
+     * @throws IllegalArgumentException if value is not positive number
+     */
+    int getPositiveIntOptionValue(final String name, final int defaultValue) {
+        final String value = getOptionValue(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        final String message = "Invalid argument: " + name + " must be positive number, but was: " + value;
+        final int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(message, e);
+        }
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(message);
+        }
+        return parsed;
+    }
+}
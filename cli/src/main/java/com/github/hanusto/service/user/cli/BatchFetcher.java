@@ -0,0 +1,157 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Fetches profiles of many users concurrently and writes them as newline delimited JSON.
+ * <p>
+ * At most {@code parallelism} users are fetched at once, all of them by the same provider, so they share its
+ * connection pool. Every result is written as one line as soon as it completes, so lines are not in order of IDs.
+ * Found user is written as its profile, failure as {@code {"id":1,"error":"NOT_FOUND","message":"..."}}.
+ * Output is flushed after every line, so consumer of the output, e.g. pipe, gets every result as soon as it completes.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+final class BatchFetcher {
+
+    private static final String ERROR_NOT_FOUND = "NOT_FOUND";
+    private static final String ERROR_FAILED = "FAILED";
+
+    private final UserDataProvider dataProvider;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+
+    /**
+     * New instance.
+     *
+     * @param dataProvider to fetch users
+     * @param objectMapper to encode results
+     * @param parallelism  maximum count of users fetched at once
+     */
+    BatchFetcher(final UserDataProvider dataProvider, final ObjectMapper objectMapper, final int parallelism) {
+        Assert.isTrue(parallelism > 0, "Parallelism must be positive");
+
+        this.dataProvider = dataProvider;
+        this.objectMapper = objectMapper;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Fetches users and writes them to output, it blocks until all of them are written.
+     *
+     * @param ids    of users
+     * @param output of results, it is flushed after every result but not closed
+     * @return summary of batch
+     */
+    Summary fetch(final Flux<Long> ids, final Writer output) {
+        final LongAdder found = new LongAdder();
+        final LongAdder notFound = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final long start = System.nanoTime();
+
+        ids.flatMap(id -> fetch(id, found, notFound, failed), parallelism)
+           // results are emitted serially, so lines are never interleaved
+           .doOnNext(line -> write(output, line))
+           .blockLast();
+
+        return new Summary(found.sum(), notFound.sum(), failed.sum(), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private Mono<String> fetch(final Long id, final LongAdder found, final LongAdder notFound, final LongAdder failed) {
+        return Mono.defer(() -> dataProvider.getById(id.longValue()))
+                   .map(user -> {
+                       found.increment();
+                       return encode(user);
+                   })
+                   .onErrorResume(NotFoundException.class, e -> {
+                       notFound.increment();
+                       return Mono.just(error(id, ERROR_NOT_FOUND, e));
+                   })
+                   .onErrorResume(e -> {
+                       LOG.debug("User {} cannot be fetched", id, e);
+                       failed.increment();
+                       return Mono.just(error(id, ERROR_FAILED, e));
+                   });
+    }
+
+    private String error(final Long id, final String error, final Throwable e) {
+        final ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", id);
+        node.put("error", error);
+        node.put("message", String.valueOf(e.getMessage()));
+        return encode(node);
+    }
+
+    private String encode(final Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Result cannot be encoded", e);
+        }
+    }
+
+    private static void write(final Writer output, final String line) {
+        try {
+            output.write(line);
+            output.write('\n');
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Summary of fetched batch.
+     */
+    @Value
+    static class Summary {
+        private final long found;
+        private final long notFound;
+        private final long failed;
+        private final Duration elapsed;
+
+        long getTotal() {
+            return found + notFound + failed;
+        }
+
+        @Override
+        public String toString() {
+            final double seconds = Math.max(elapsed.toNanos(), 1) / 1e9;
+            return String.format("Fetched %d users in %.3f s (%.1f users/s): %d found, %d not found, %d failed",
+                    getTotal(), seconds, getTotal() / seconds, found, notFound, failed);
+        }
+    }
+}
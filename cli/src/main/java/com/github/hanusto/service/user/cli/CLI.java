@@ -16,24 +16,54 @@
 
 package com.github.hanusto.service.user.cli;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.DefaultApplicationArguments;
+import reactor.core.publisher.Flux;
 
 import com.github.hanusto.service.user.provider.JSONPlaceholderUserDataProvider;
 import com.github.hanusto.service.user.provider.UserDataProvider;
 
 /**
  * CLI as interface of {@link UserDataProvider}.
+ * <p>
+ * Profile of single user is fetched by {@code --userId=1}. Batch of users is fetched by {@code --userIds=1,2,10-20}
+ * and/or {@code --file=ids.txt} ({@code --file=-} reads standard input), its profiles are written as newline delimited JSON
+ * as they are fetched and summary is written to standard error. Batch fails with exit status 1 if some users cannot be
+ * fetched or if {@code --parallelism} is not positive number.
+ * </p>
+ * <p>
+ * CLI is optimized for startup: arguments are parsed without Spring Boot and provider, together with its HTTP client,
+ * is created only after arguments are validated.
+ * </p>
  *
  * @author Tomas Hanus
  */
 @Slf4j
 public class CLI {
 
-    private static final UserDataProvider DATA_PROVIDER = new JSONPlaceholderUserDataProvider();
     private static final String USER_ID_OPT = "userId";
+    private static final String USER_IDS_OPT = "userIds";
+    private static final String FILE_OPT = "file";
+    private static final String PARALLELISM_OPT = "parallelism";
+    private static final String BASE_URL_OPT = "baseUrl";
+    private static final String HELP_OPT = "help";
+    private static final String STDIN = "-";
+    private static final int DEFAULT_PARALLELISM = 16;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final String USAGE = "Usage: --userId=<id> | [--userIds=<ids and ranges, e.g. 1,2,10-20>] [--file=<path or - for stdin>]"
+            + " [--parallelism=<count, default " + DEFAULT_PARALLELISM + ">] [--baseUrl=<url of remote web server>]";
 
     /**
      * Start the CLI.
@@ -41,21 +71,73 @@ public class CLI {
      * @param args of CLI.
      */
     public static void main(String[] args) {
-        final DefaultApplicationArguments arguments = new DefaultApplicationArguments(args);
+        final Arguments arguments = new Arguments(args);
+
+        if (arguments.containsOption(HELP_OPT)) {
+            System.err.println(USAGE);
+        } else if (arguments.containsOption(USER_IDS_OPT) || arguments.containsOption(FILE_OPT)) {
+            final int parallelism;
+            try {
+                parallelism = arguments.getPositiveIntOptionValue(PARALLELISM_OPT, DEFAULT_PARALLELISM);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println(USAGE);
+                System.exit(1);
+                return;
+            }
 
-        if (arguments.containsOption(USER_ID_OPT)) {
+            final BatchFetcher.Summary summary = fetchBatch(arguments, parallelism);
+            System.err.println(summary);
+            if (summary.getFailed() > 0) {
+                System.exit(1);
+            }
+        } else if (arguments.containsOption(USER_ID_OPT)) {
             final List<String> optionValues = arguments.getOptionValues(USER_ID_OPT);
 
             if (optionValues.isEmpty()) {
                 System.err.println("Empty argument: userId");
             } else {
-                final String userId = optionValues.get(0);
+                final long userId = Long.parseLong(optionValues.get(0));
                 LOG.debug("Resolved user ID: {}", userId);
 
-                System.out.println(DATA_PROVIDER.getById(Long.valueOf(userId)).block());
+                System.out.println(createDataProvider(arguments, 1).getById(userId).block());
             }
         } else {
-            System.err.println("Missing required argument: userId (number)");
+            System.err.println("Missing required argument: userId (number), userIds (list or ranges) or file (path or - for stdin)");
+            System.err.println(USAGE);
+        }
+    }
+
+    private static BatchFetcher.Summary fetchBatch(final Arguments arguments, final int parallelism) {
+        final List<Flux<Long>> sources = new ArrayList<>();
+        if (arguments.containsOption(USER_IDS_OPT)) {
+            arguments.getOptionValues(USER_IDS_OPT).forEach(spec -> sources.add(UserIds.of(spec)));
+        }
+        if (arguments.containsOption(FILE_OPT)) {
+            arguments.getOptionValues(FILE_OPT).forEach(file -> sources.add(UserIds.from(() -> STDIN.equals(file)
+                    ? new BufferedReader(new InputStreamReader(System.in, UTF_8))
+                    : Files.newBufferedReader(Paths.get(file), UTF_8))));
         }
+
+        final BatchFetcher fetcher = new BatchFetcher(createDataProvider(arguments, parallelism), new ObjectMapper(), parallelism);
+        final Writer output = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), OUTPUT_BUFFER_SIZE);
+
+        return fetcher.fetch(Flux.concat(sources), output);
+    }
+
+    /**
+     * Creates provider whose connection pool and bulkheads admit all concurrent fetches, every fetch takes
+     * one connection for the user and one for its posts. NIO transport is used, single run does not pay off the cost of
+     * extracting and loading native epoll library. Lookups are not conditional, every user is fetched only once.
+     */
+    private static UserDataProvider createDataProvider(final Arguments arguments, final int parallelism) {
+        final JSONPlaceholderUserDataProvider.Config config = new JSONPlaceholderUserDataProvider.Config();
+        config.setBaseUrl(arguments.getOptionValue(BASE_URL_OPT, config.getBaseUrl()));
+        config.getClient().setPreferNative(false);
+        config.getConditional().setEnabled(false);
+        config.getClient().setMaxConnections(Math.max(config.getClient().getMaxConnections(), 2 * parallelism));
+        config.getResilience().setMaxConcurrentCalls(Math.max(config.getResilience().getMaxConcurrentCalls(), parallelism));
+
+        return new JSONPlaceholderUserDataProvider(config);
     }
 }
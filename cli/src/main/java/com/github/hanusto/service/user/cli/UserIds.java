@@ -0,0 +1,95 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Callable;
+import java.util.stream.LongStream;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Parser of user IDs given to CLI.
+ * <p>
+ * IDs are separated by commas or whitespace, inclusive range of IDs is written as {@code 10-20}.
+ * IDs are produced lazily, so ranges and files of any size are not held in memory.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class UserIds {
+
+    private static final String RANGE_SEPARATOR = "-";
+
+    private UserIds() {
+    }
+
+    /**
+     * Parses IDs, e.g. {@code 1,2,10-20}.
+     *
+     * @param spec of IDs
+     * @return publisher of IDs in given order
+     * @throws IllegalArgumentException if an ID is not a number or a range is not ascending
+     */
+    static Flux<Long> of(final String spec) {
+        return Flux.fromArray(spec.trim().split("[,\\s]+"))
+                   .filter(token -> !token.isEmpty())
+                   .concatMap(UserIds::token);
+    }
+
+    /**
+     * Reads IDs from lines of reader, every line can contain more IDs or ranges. Reader is closed when IDs are read.
+     *
+     * @param reader of IDs
+     * @return publisher of IDs in given order
+     */
+    static Flux<Long> from(final Callable<BufferedReader> reader) {
+        return Flux.using(reader,
+                opened -> Flux.fromStream(opened.lines()).concatMap(UserIds::of),
+                opened -> {
+                    try {
+                        opened.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private static Flux<Long> token(final String token) {
+        final int separator = token.indexOf(RANGE_SEPARATOR, 1);
+        if (separator < 0) {
+            return Flux.just(parse(token, token));
+        }
+
+        final long from = parse(token.substring(0, separator), token);
+        final long to = parse(token.substring(separator + 1), token);
+        if (from > to) {
+            throw new IllegalArgumentException("Range of user IDs must be ascending: " + token);
+        }
+        return Flux.fromStream(() -> LongStream.rangeClosed(from, to).boxed());
+    }
+
+    private static long parse(final String value, final String token) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid user ID: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link Arguments}.
+ *
+ * @author Tomas Hanus
+ */
+class ArgumentsTest {
+
+    @Test
+    void options() {
+        final Arguments arguments = new Arguments("--userIds=1,2", "ignored", "--help", "--userIds=3-5", "--baseUrl=http://a/?b=c");
+
+        assertEquals(arguments.getOptionValues("userIds"), Arrays.asList("1,2", "3-5"));
+        assertEquals(arguments.getOptionValue("userIds", "0"), "3-5");
+        assertEquals(arguments.getOptionValue("baseUrl", null), "http://a/?b=c");
+        assertTrue(arguments.containsOption("help"));
+        assertEquals(arguments.getOptionValues("help"), Collections.emptyList());
+        assertEquals(arguments.getOptionValue("help", "default"), "default");
+        assertFalse(arguments.containsOption("ignored"));
+        assertNull(arguments.getOptionValues("userId"));
+        assertEquals(arguments.getOptionValue("parallelism", "16"), "16");
+    }
+
+    @Test
+    void positiveIntOption() {
+        assertEquals(new Arguments("--parallelism=4").getPositiveIntOptionValue("parallelism", 16), 4);
+        assertEquals(new Arguments("--parallelism").getPositiveIntOptionValue("parallelism", 16), 16);
+        assertEquals(new Arguments().getPositiveIntOptionValue("parallelism", 16), 16);
+        assertThrows(IllegalArgumentException.class, () -> new Arguments("--parallelism=x").getPositiveIntOptionValue("parallelism", 16));
+        assertThrows(IllegalArgumentException.class, () -> new Arguments("--parallelism=0").getPositiveIntOptionValue("parallelism", 16));
+    }
+
+    @Test
+    void options_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new Arguments("--=1"));
+        assertThrows(IllegalArgumentException.class, () -> new Arguments("--"));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cli;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import com.github.hanusto.service.user.provider.JSONPlaceholderUserDataProvider;
+import com.github.hanusto.service.user.test.AbstractFunctionalTest;
+
+/**
+ * Test suite for {@link BatchFetcher}.
+ *
+ * @author Tomas Hanus
+ */
+class BatchFetcherTest extends AbstractFunctionalTest {
+
+    private BatchFetcher TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        WireMock.reset();
+
+        final JSONPlaceholderUserDataProvider.Config config = new JSONPlaceholderUserDataProvider.Config();
+        config.setBaseUrl(getWireMockUrl() + getPath());
+        config.getResilience().setEnabled(false);
+
+        TESTED = new BatchFetcher(new JSONPlaceholderUserDataProvider(config), new ObjectMapper(), 2);
+    }
+
+    @Test
+    void fetch() {
+        // prepare mock
+        stub("users/1", 200, fileAsString("/user-1_response.json"));
+        stub("posts?userId=1", 200, "[]");
+        stub("users/2", 404, "");
+        stub("posts?userId=2", 200, "[]");
+        stub("users/3", 500, "");
+        stub("posts?userId=3", 200, "[]");
+
+        // execute
+        final StringWriter output = new StringWriter();
+        final BatchFetcher.Summary testedResult = TESTED.fetch(Flux.just(1L, 2L, 3L), output);
+
+        // verification
+        assertEquals(testedResult.getFound(), 1);
+        assertEquals(testedResult.getNotFound(), 1);
+        assertEquals(testedResult.getFailed(), 1);
+
+        final List<String> lines = Arrays.stream(output.toString().split("\n")).sorted().collect(Collectors.toList());
+        assertEquals(lines.size(), 3);
+        assertEqualsPayload("user-1_line.json", lines.get(0));
+        assertEqualsPayload("user-2_line.json", lines.get(1));
+        assertEqualsPayload("user-3_line.json", lines.get(2));
+    }
+
+    @Test
+    void fetch_flushed() {
+        // prepare mock
+        stub("users/2", 404, "");
+        stub("posts?userId=2", 200, "[]");
+        stub("users/3", 500, "");
+        stub("posts?userId=3", 200, "[]");
+
+        // execute, output is recorded whenever it is flushed
+        final List<String> flushed = new ArrayList<>();
+        final StringWriter output = new StringWriter() {
+            @Override
+            public void flush() {
+                flushed.add(toString());
+            }
+        };
+        TESTED.fetch(Flux.just(2L, 3L), output);
+
+        // verification, every result is flushed as soon as it is written
+        assertEquals(flushed.size(), 2);
+        assertEquals(flushed.get(0).split("\n").length, 1);
+        assertEquals(flushed.get(1), output.toString());
+    }
+
+    private static void stub(final String path, final int status, final String body) {
+        WireMock.stubFor(get(urlEqualTo(getPath() + path))
+                .willReturn(aResponse()
+                        .withStatus(status)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(body)));
+    }
+
+    private static String getPath() {
+        return "/" + BatchFetcherTest.class.getSimpleName() + "/";
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link UserIds}.
+ *
+ * @author Tomas Hanus
+ */
+class UserIdsTest {
+
+    @Test
+    void of() {
+        assertEquals(UserIds.of(" 3, 1 5-7,2 ").collectList().block(), Arrays.asList(3L, 1L, 5L, 6L, 7L, 2L));
+    }
+
+    @Test
+    void of_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> UserIds.of("1,x").collectList().block());
+        assertThrows(IllegalArgumentException.class, () -> UserIds.of("7-5").collectList().block());
+    }
+
+    @Test
+    void from() {
+        final String lines = "1\n2,3\n\n10-12\n";
+
+        assertEquals(UserIds.from(() -> new BufferedReader(new StringReader(lines))).collectList().block(),
+                Arrays.asList(1L, 2L, 3L, 10L, 11L, 12L));
+    }
+}
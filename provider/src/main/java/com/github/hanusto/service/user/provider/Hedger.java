@@ -0,0 +1,168 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Hedging of calls of upstream resource.
+ * <p>
+ * If call has not answered within delay given by percentile of recent latencies, identical call is fired,
+ * the first answer wins and the other call is cancelled. Hedges are paid from budget that is refilled by
+ * {@link JSONPlaceholderUserDataProvider.Hedging#getBudgetRatio()} for every call, so hedges never exceed
+ * that ratio of calls.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class Hedger {
+
+    private static final String METRIC_PREFIX = "user.upstream.hedging.";
+    private static final String TAG_RESOURCE = "resource";
+
+    /**
+     * Count of latencies the percentile is evaluated from.
+     */
+    private static final int WINDOW_SIZE = 1024;
+    /**
+     * Count of recorded latencies after that percentile is evaluated again.
+     */
+    private static final int EVALUATION_PERIOD = 64;
+    /**
+     * Budget is held in thousandths of hedge.
+     */
+    private static final long HEDGE_COST = 1000;
+    /**
+     * Maximum count of hedges saved in budget, it bounds burst of hedges.
+     */
+    private static final long MAX_BUDGET = 10 * HEDGE_COST;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long budgetRefill;
+
+    private final long[] window = new long[WINDOW_SIZE];
+    private long recorded;
+    private volatile long delayNanos;
+
+    private final AtomicLong budget = new AtomicLong();
+
+    private final Counter fired;
+    private final Counter rejected;
+
+    /**
+     * New instance.
+     *
+     * @param name          of resource
+     * @param config        of hedging
+     * @param meterRegistry to register metrics
+     */
+    Hedger(final String name, final JSONPlaceholderUserDataProvider.Hedging config, final MeterRegistry meterRegistry) {
+        Assert.isTrue(config.getPercentile() > 0 && config.getPercentile() < 100, "Percentile must be in range (0, 100)");
+        Assert.isTrue(config.getBudgetRatio() > 0 && config.getBudgetRatio() <= 1, "Budget ratio must be in range (0, 1]");
+
+        this.percentile = config.getPercentile();
+        this.minDelayNanos = config.getMinDelay().toNanos();
+        this.budgetRefill = Math.round(config.getBudgetRatio() * HEDGE_COST);
+        this.delayNanos = minDelayNanos;
+
+        this.fired = Counter.builder(METRIC_PREFIX + "fired")
+                            .tag(TAG_RESOURCE, name)
+                            .description("Hedges fired for slow calls")
+                            .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_PREFIX + "rejected")
+                               .tag(TAG_RESOURCE, name)
+                               .description("Hedges not fired because budget was exhausted")
+                               .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "delay", this, h -> h.delayNanos / 1e9)
+             .tag(TAG_RESOURCE, name)
+             .description("Current delay in seconds after that hedge is fired")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Hedges call, it must be cold so every subscription fires a new call. Each call should be guarded on its own,
+     * so hedge takes its own permission of bulkhead.
+     *
+     * @param call of resource
+     * @param <T>  type of result
+     * @return hedged call
+     */
+    <T> Mono<T> hedge(final Mono<T> call) {
+        return Mono.defer(() -> {
+            deposit();
+            final Duration delay = Duration.ofNanos(delayNanos);
+            final long start = System.nanoTime();
+
+            // primary is cancelled when hedge wins, its latency is then recorded as elapsed time, that is at least the delay,
+            // otherwise slow calls would be missing in percentile and the delay would only decrease
+            final Mono<T> primary = call.doFinally(signal -> {
+                if (signal != SignalType.ON_ERROR) {
+                    record(System.nanoTime() - start);
+                }
+            });
+            final Mono<T> hedge = Mono.delay(delay).then(Mono.defer(() -> {
+                if (!withdraw()) {
+                    rejected.increment();
+                    // primary call decides the result
+                    return Mono.never();
+                }
+                fired.increment();
+                // failed hedge, e.g. rejected one, must not fail the call, primary call decides the result then
+                return call.onErrorResume(e -> Mono.never());
+            }));
+
+            return Mono.first(primary, hedge);
+        });
+    }
+
+    private void deposit() {
+        budget.getAndUpdate(tokens -> Math.min(MAX_BUDGET, tokens + budgetRefill));
+    }
+
+    private boolean withdraw() {
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens < HEDGE_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(tokens, tokens - HEDGE_COST));
+
+        return true;
+    }
+
+    private synchronized void record(final long latencyNanos) {
+        window[(int) (recorded++ % WINDOW_SIZE)] = latencyNanos;
+
+        if (recorded % EVALUATION_PERIOD == 0) {
+            final long[] samples = Arrays.copyOf(window, (int) Math.min(recorded, WINDOW_SIZE));
+            Arrays.sort(samples);
+            final int index = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+            delayNanos = Math.max(minDelayNanos, samples[Math.max(0, index)]);
+        }
+    }
+}
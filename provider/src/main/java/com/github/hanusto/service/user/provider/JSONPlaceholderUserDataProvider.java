@@ -16,24 +16,40 @@
 
 package com.github.hanusto.service.user.provider;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.Data;
 import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.Assert;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import com.github.hanusto.service.user.provider.model.Post;
 import com.github.hanusto.service.user.provider.model.User;
 import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
 
 /**
  * JSONPlaceholder implementation of {@link UserDataProvider} that use <a href="https://jsonplaceholder.typicode.com/">public API</a>.
@@ -43,10 +59,24 @@ import com.github.hanusto.service.user.provider.model.exception.NotFoundExceptio
 @Slf4j
 public class JSONPlaceholderUserDataProvider implements UserDataProvider {
 
+    private final static String QUERY_PARAM_ID = "id";
     private final static String QUERY_PARAM_USER_ID = "userId";
+    private final static String QUERY_PARAM_START = "_start";
+    private final static String QUERY_PARAM_LIMIT = "_limit";
 
     private final Config config;
     private final WebClient webClient;
+    private final UpstreamResource users;
+    private final UpstreamResource posts;
+
+    /**
+     * Registry of in-flight lookups, concurrent callers of the same ID share one upstream exchange.
+     */
+    private final ConcurrentMap<Long, Mono<User>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * Last fetched users with validators of upstream responses, {@code null} if conditional requests are disabled.
+     */
+    private final Cache<Long, Validated> validated;
 
     /**
      * Default initialization of provider.
@@ -61,53 +91,298 @@ public class JSONPlaceholderUserDataProvider implements UserDataProvider {
      * @param config of provider
      */
     public JSONPlaceholderUserDataProvider(final Config config) {
+        this(config, Metrics.globalRegistry);
+    }
+
+    /**
+     * Initialization with custom configuration and registry of metrics.
+     *
+     * @param config        of provider
+     * @param meterRegistry to register metrics
+     */
+    public JSONPlaceholderUserDataProvider(final Config config, final MeterRegistry meterRegistry) {
         this.config = config;
 
         LOG.debug("Configuration of provider: {}", config);
 
-        this.webClient = WebClient
+        this.webClient = new WebClientFactory(config.getClient(), meterRegistry)
                 .create(config.getBaseUrl());
+        this.users = new UpstreamResource("users", config.getResilience(), config.getHedging(), meterRegistry);
+        this.posts = new UpstreamResource("posts", config.getResilience(), config.getHedging(), meterRegistry);
+        this.validated = config.getConditional().isEnabled()
+                ? Caffeine.newBuilder().maximumSize(config.getConditional().getMaximumSize()).build()
+                : null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Concurrent calls for the same ID share one upstream exchange. It is not cancelled when one of subscribers
+     * cancels, the others still get its result.
+     * </p>
+     */
     @Override
     public Mono<User> getById(final Long id) {
         Assert.notNull(id, "ID must not be null");
 
-        final Mono<List<Post>> posts =
-                execute(UriComponentsBuilder.fromUriString(config.getPostsRelativePath()).queryParam(QUERY_PARAM_USER_ID, id))
-                        .flatMap(res -> res.bodyToMono(new ParameterizedTypeReference<List<Post>>() {
-                        }));
+        // lookup is registered on subscription, so assembled but never subscribed lookup does not stay registered
+        return Mono.defer(() -> {
+            final Mono<User> shared = inFlight.computeIfAbsent(id, this::fetch);
+            // subscribers are detached from the shared exchange, so cancellation of one does not cancel it for others,
+            // exchange is unregistered before result is propagated, so a caller reacting to it does not get the finished one,
+            // only this exchange is unregistered, not a newer one registered meanwhile for the same ID
+            return Mono.create(sink -> shared.doOnSuccessOrError((user, e) -> inFlight.remove(id, shared))
+                                             .subscribe(sink::success, sink::error, sink::success));
+        });
+    }
 
-        final Mono<User> user =
-                execute(UriComponentsBuilder.fromUriString(config.getUsersRelativePath()).pathSegment("" + id))
-                        .flatMap(res -> res.bodyToMono(User.class));
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Posts are fetched only if they are projected, otherwise only user is fetched and its posts are {@code null}.
+     * Fields of user are decoded completely, even if they are not projected.
+     * </p>
+     */
+    @Override
+    public Mono<User> getById(final long id, final Projection projection) {
+        Assert.notNull(projection, "Projection must not be null");
+
+        if (projection.includesPosts()) {
+            return getById(id);
+        }
+        return users.hedge(users.guard(
+                execute(users, UriComponentsBuilder.fromUriString(config.getUsersRelativePath()).pathSegment("" + id))
+                        .flatMap(res -> res.bodyToMono(User.class))))
+                    .subscribeOn(Schedulers.parallel());
+    }
+
+    /**
+     * Fetches user with posts from upstream. Slow calls are hedged, if it is enabled.
+     * <p>
+     * If user was fetched before and upstream responded with ETag, request is conditional. When neither user nor posts are
+     * modified, the previous instance is returned, so nothing is decoded and encoded form of the profile can be reused.
+     * </p>
+     *
+     * @param id of user
+     * @return publisher of {@link User} that replays its result
+     */
+    private Mono<User> fetch(final Long id) {
+        final Validated previous = validated == null ? null : validated.getIfPresent(id);
+
+        // every attempt of hedged call is guarded on its own, so two calls in flight take two permissions of bulkhead
+        final Mono<Versioned<Iterable<Post>>> posts = this.posts.hedge(this.posts.guard(
+                execute(this.posts, UriComponentsBuilder.fromUriString(config.getPostsRelativePath()).queryParam(QUERY_PARAM_USER_ID, id),
+                        previous == null ? null : previous.getPostsTag())
+                        .flatMap(res -> decode(res, res1 -> res1.bodyToMono(new ParameterizedTypeReference<List<Post>>() {
+                        })))));
+
+        final Mono<Versioned<User>> user = users.hedge(users.guard(
+                execute(users, UriComponentsBuilder.fromUriString(config.getUsersRelativePath()).pathSegment("" + id),
+                        previous == null ? null : previous.getUserTag())
+                        .flatMap(res -> decode(res, res1 -> res1.bodyToMono(User.class)))));
 
         return Mono
-                .zip(user, posts, (user1, posts1) -> {
-                    user1.setPosts(posts1);
-                    return user1;
+                .zip(user, posts, (user1, posts1) -> merge(id, previous, user1, posts1))
+                .doOnError(NotFoundException.class, e -> {
+                    if (validated != null) {
+                        validated.invalidate(id);
+                    }
                 })
                 .subscribeOn(Schedulers.parallel())
                 // cache predicate of mono block
                 .cache();
     }
 
+    /**
+     * Decodes body of response, unless upstream responded that it is not modified.
+     *
+     * @param response of upstream
+     * @param decoder  of body
+     * @param <T>      type of body
+     * @return decoded body with its ETag
+     */
+    private static <T> Mono<Versioned<T>> decode(final ClientResponse response, final Function<ClientResponse, Mono<? extends T>> decoder) {
+        final String etag = response.headers().asHttpHeaders().getETag();
+        if (response.statusCode() == HttpStatus.NOT_MODIFIED) {
+            // body must be consumed, so connection is released back to pool
+            return response.bodyToMono(Void.class).then(Mono.just(new Versioned<>(null, etag)));
+        }
+        return decoder.apply(response).map(value -> new Versioned<>(value, etag));
+    }
+
+    /**
+     * Merges user with its posts, parts that are not modified are taken from previous user.
+     */
+    private User merge(final Long id, final Validated previous, final Versioned<User> user, final Versioned<Iterable<Post>> posts) {
+        final User merged;
+        if (user.isNotModified() && posts.isNotModified()) {
+            merged = previous.getUser();
+        } else if (user.isNotModified()) {
+            final User previousUser = previous.getUser();
+            merged = new User(previousUser.getId(), previousUser.getName(), previousUser.getUsername(), previousUser.getEmail(), posts.getValue());
+        } else {
+            merged = user.getValue();
+            merged.setPosts(posts.isNotModified() ? previous.getUser().getPosts() : posts.getValue());
+        }
+
+        if (validated != null) {
+            // upstream may not respond with ETag of not modified resource, its validator stays the same
+            final String userTag = user.isNotModified() && user.getEtag() == null ? previous.getUserTag() : user.getEtag();
+            final String postsTag = posts.isNotModified() && posts.getEtag() == null ? previous.getPostsTag() : posts.getEtag();
+            if (userTag == null && postsTag == null) {
+                validated.invalidate(id);
+            } else {
+                validated.put(id, new Validated(merged, userTag, postsTag));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IDs are split into batches of {@link Config#getBatchSize()}, each batch costs one call of users and one call of posts resource.
+     * </p>
+     */
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.fromIterable(new LinkedHashSet<>(ids))
+                   .buffer(config.getBatchSize())
+                   .flatMap(this::getBatch);
+    }
+
+    /**
+     * Gets batch of users with their posts.
+     *
+     * @param ids of users, unique
+     * @return found users
+     */
+    private Flux<User> getBatch(final List<Long> ids) {
+        final Object[] queryValues = ids.toArray();
+
+        final Mono<Map<Long, Collection<Post>>> posts = this.posts.guard(
+                execute(this.posts, UriComponentsBuilder.fromUriString(config.getPostsRelativePath()).queryParam(QUERY_PARAM_USER_ID, queryValues))
+                        .flatMapMany(res -> res.bodyToFlux(AuthoredPost.class))
+                        .collectMultimap(AuthoredPost::getUserId, AuthoredPost::toPost));
+
+        final Mono<List<User>> users = this.users.guard(
+                execute(this.users, UriComponentsBuilder.fromUriString(config.getUsersRelativePath()).queryParam(QUERY_PARAM_ID, queryValues))
+                        .flatMap(res -> res.bodyToFlux(User.class).collectList()));
+
+        return Mono
+                .zip(users, posts, (users1, posts1) -> {
+                    users1.forEach(user -> user.setPosts(posts1.getOrDefault(user.getId(), Collections.emptyList())));
+                    return users1;
+                })
+                .subscribeOn(Schedulers.parallel())
+                .flatMapIterable(users1 -> users1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Posts are decoded from upstream response one by one, they are not collected.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return posts.guard(
+                execute(this.posts, UriComponentsBuilder.fromUriString(config.getPostsRelativePath()).queryParam(QUERY_PARAM_USER_ID, id))
+                        .flatMapMany(res -> res.bodyToFlux(Post.class)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only posts of the window are requested, by paging params of upstream.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final long id, final long offset, final int limit) {
+        Assert.isTrue(offset >= 0, "Offset must not be negative");
+        Assert.isTrue(limit > 0, "Limit must be positive");
+
+        return posts.guard(
+                execute(this.posts, UriComponentsBuilder.fromUriString(config.getPostsRelativePath())
+                                                        .queryParam(QUERY_PARAM_USER_ID, id)
+                                                        .queryParam(QUERY_PARAM_START, offset)
+                                                        .queryParam(QUERY_PARAM_LIMIT, limit))
+                        .flatMapMany(res -> res.bodyToFlux(Post.class)));
+    }
+
     /**
      * Executes call to URI.
      *
-     * @param uri as builder of resource
+     * @param resource of upstream, it tags metrics of call
+     * @param uri      as builder of resource
      * @return response
+     * @throws NotFoundException    if resource is not found
+     * @throws UnavailableException if upstream responds with server error
      */
-    private Mono<ClientResponse> execute(UriComponentsBuilder uri) {
+    private Mono<ClientResponse> execute(UpstreamResource resource, UriComponentsBuilder uri) {
+        return execute(resource, uri, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Validators of previous responses are forgotten, so the next lookup is not conditional and user is decoded again.
+     * </p>
+     */
+    @Override
+    public void invalidate(final long id) {
+        if (validated != null) {
+            validated.invalidate(id);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAll() {
+        if (validated != null) {
+            validated.invalidateAll();
+        }
+    }
+
+    /**
+     * Executes call to URI, conditionally if ETag is given.
+     *
+     * @param resource of upstream, it tags metrics of call
+     * @param uri      as builder of resource
+     * @param etag     of previous response, {@code null} if call is not conditional
+     * @return response, with status {@code 304 Not Modified} if resource matches ETag
+     * @throws NotFoundException    if resource is not found
+     * @throws UnavailableException if upstream responds with server error
+     */
+    private Mono<ClientResponse> execute(UpstreamResource resource, UriComponentsBuilder uri, String etag) {
         return webClient.get()
                         .uri(uri.toUriString())
+                        .attribute(UpstreamMetricsFilter.RESOURCE_ATTRIBUTE, resource.getName())
                         .accept(MediaType.APPLICATION_JSON_UTF8)
+                        .headers(headers -> {
+                            if (etag != null) {
+                                headers.setIfNoneMatch(etag);
+                            }
+                        })
                         .exchange()
-                        .doOnNext(response -> {
+                        .flatMap(response -> {
                             HttpStatus httpStatus = response.statusCode();
                             if (httpStatus == HttpStatus.NOT_FOUND) {
-                                throw new NotFoundException("User not found");
+                                // body must be consumed, so connection is released back to pool
+                                return response.bodyToMono(Void.class)
+                                               .then(Mono.error(new NotFoundException("User not found")));
+                            }
+                            if (httpStatus.is5xxServerError()) {
+                                return response.bodyToMono(Void.class)
+                                               .then(Mono.error(new UnavailableException("Upstream responded with status " + httpStatus)));
                             }
+                            return Mono.just(response);
                         });
     }
 
@@ -122,5 +397,206 @@ public class JSONPlaceholderUserDataProvider implements UserDataProvider {
         private String usersRelativePath = "users";
         @NonNull
         private String postsRelativePath = "posts";
+        /**
+         * Maximum count of users fetched by one upstream call in {@link JSONPlaceholderUserDataProvider#getByIds(Collection)}.
+         */
+        private int batchSize = 100;
+        /**
+         * Configuration of HTTP client.
+         */
+        @NonNull
+        private Client client = new Client();
+        /**
+         * Configuration of circuit breaker and bulkhead, each resource of upstream has its own.
+         */
+        @NonNull
+        private Resilience resilience = new Resilience();
+        /**
+         * Configuration of hedging of single user lookups.
+         */
+        @NonNull
+        private Hedging hedging = new Hedging();
+        /**
+         * Configuration of conditional requests of single user lookups.
+         */
+        @NonNull
+        private Conditional conditional = new Conditional();
+
+        /**
+         * Sets maximum count of users fetched by one upstream call.
+         *
+         * @param batchSize must be positive
+         * @throws IllegalArgumentException if size is not positive
+         */
+        public void setBatchSize(final int batchSize) {
+            Assert.isTrue(batchSize > 0, "Batch size must be positive");
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Configuration of HTTP client and its connection pool.
+     */
+    @Data
+    public static class Client {
+        /**
+         * Name of connection pool, it tags metrics of the pool, so every provider should have its own.
+         */
+        @NonNull
+        private String poolName = "user-data-provider";
+        /**
+         * Maximum count of pooled connections, pool is unbounded if it is not positive.
+         */
+        private int maxConnections = 500;
+        /**
+         * Maximum time to wait for connection from pool.
+         */
+        @NonNull
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+        /**
+         * Time after that idle connection is closed, zero disables eviction. It should be greater than read timeout.
+         */
+        @NonNull
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        @NonNull
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        @NonNull
+        private Duration readTimeout = Duration.ofSeconds(10);
+        @NonNull
+        private Duration writeTimeout = Duration.ofSeconds(10);
+        /**
+         * Whether to request compressed responses.
+         */
+        private boolean compress = true;
+        private boolean keepAlive = true;
+        /**
+         * Whether to use native transport (epoll) if it is available.
+         */
+        private boolean preferNative = true;
+    }
+
+    /**
+     * Configuration of circuit breaker and bulkhead around calls of upstream resource.
+     */
+    @Data
+    public static class Resilience {
+        /**
+         * Whether calls are guarded.
+         */
+        private boolean enabled = true;
+        /**
+         * Failure rate in percentage above that circuit breaker opens.
+         */
+        private float failureRateThreshold = 50;
+        /**
+         * Count of calls used to evaluate failure rate of closed circuit breaker.
+         */
+        private int ringBufferSizeInClosedState = 100;
+        /**
+         * Count of trial calls permitted by half open circuit breaker.
+         */
+        private int ringBufferSizeInHalfOpenState = 10;
+        /**
+         * Time for that circuit breaker stays open, before it permits trial calls.
+         */
+        @NonNull
+        private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+        /**
+         * Maximum count of concurrent calls.
+         */
+        private int maxConcurrentCalls = 200;
+        /**
+         * Maximum time to wait for permission of bulkhead, only zero is supported.
+         */
+        @NonNull
+        private Duration maxWaitTime = Duration.ZERO;
+
+        /**
+         * Sets maximum time to wait for permission of bulkhead.
+         *
+         * @param maxWaitTime must be zero, bulkhead waits by blocking of subscribing thread, that is event loop
+         * @throws IllegalArgumentException if time is not zero
+         */
+        public void setMaxWaitTime(@NonNull final Duration maxWaitTime) {
+            Assert.isTrue(maxWaitTime.isZero(), "Max wait time of bulkhead must be zero, waiting would block event loop");
+            this.maxWaitTime = maxWaitTime;
+        }
+    }
+
+    /**
+     * Configuration of hedging, a slow call is raced by identical call and the first answer wins.
+     */
+    @Data
+    public static class Hedging {
+        /**
+         * Whether slow calls are hedged.
+         */
+        private boolean enabled = false;
+        /**
+         * Percentile of recent latencies after that hedge is fired.
+         */
+        private double percentile = 95;
+        /**
+         * Minimum delay after that hedge is fired.
+         */
+        @NonNull
+        private Duration minDelay = Duration.ofMillis(50);
+        /**
+         * Maximum ratio of hedges to calls, so upstream load grows at most by this ratio.
+         */
+        private double budgetRatio = 0.1;
+    }
+
+    /**
+     * Configuration of conditional requests, user fetched again is requested with ETags of previous responses,
+     * so upstream can respond that it is not modified.
+     */
+    @Data
+    public static class Conditional {
+        /**
+         * Whether requests are conditional.
+         */
+        private boolean enabled = true;
+        /**
+         * Maximum count of users whose previous responses are kept.
+         */
+        private long maximumSize = 10_000;
+    }
+
+    /**
+     * Decoded body of upstream response with its ETag, body is {@code null} if it is not modified.
+     */
+    @Value
+    private static class Versioned<T> {
+        private final T value;
+        private final String etag;
+
+        boolean isNotModified() {
+            return value == null;
+        }
+    }
+
+    /**
+     * User fetched from upstream with ETags of responses it is composed of.
+     */
+    @Value
+    private static class Validated {
+        private final User user;
+        private final String userTag;
+        private final String postsTag;
+    }
+
+    /**
+     * Post as provided by posts resource, it keeps reference to its author.
+     */
+    @Data
+    static class AuthoredPost {
+        private Long userId;
+        private Long id;
+        private String title;
+
+        Post toPost() {
+            return new Post(id, title);
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.provider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Projection of {@link User}, fields of user and of its posts that are requested.
+ * <p>
+ * Fields are given as comma separated list, fields of posts are prefixed by {@code posts.}, e.g.
+ * {@code name,username,posts.title}. Field {@code posts} alone requests all fields of posts.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+public final class Projection {
+
+    /**
+     * Projection of all fields.
+     */
+    public static final Projection ALL = new Projection(EnumSet.allOf(UserField.class), EnumSet.allOf(PostField.class));
+
+    private static final String POSTS_PREFIX = "posts.";
+
+    private final Set<UserField> userFields;
+    private final Set<PostField> postFields;
+
+    private Projection(final Set<UserField> userFields, final Set<PostField> postFields) {
+        this.userFields = Collections.unmodifiableSet(userFields);
+        this.postFields = Collections.unmodifiableSet(postFields);
+    }
+
+    /**
+     * Parses projection.
+     *
+     * @param fields comma separated fields, all fields are projected if it is empty
+     * @return projection
+     * @throws IllegalArgumentException if field is not known
+     */
+    public static Projection of(final String fields) {
+        final String[] names = StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(fields));
+        if (Arrays.stream(names).noneMatch(StringUtils::hasText)) {
+            return ALL;
+        }
+
+        final Set<UserField> userFields = EnumSet.noneOf(UserField.class);
+        final Set<PostField> postFields = EnumSet.noneOf(PostField.class);
+        for (String name : names) {
+            if (!StringUtils.hasText(name)) {
+                continue;
+            }
+            if (name.startsWith(POSTS_PREFIX)) {
+                userFields.add(UserField.POSTS);
+                postFields.add(field(PostField.class, name.substring(POSTS_PREFIX.length()), name));
+            } else {
+                final UserField field = field(UserField.class, name, name);
+                userFields.add(field);
+                if (field == UserField.POSTS) {
+                    postFields.addAll(EnumSet.allOf(PostField.class));
+                }
+            }
+        }
+        return userFields.size() == UserField.values().length && postFields.size() == PostField.values().length
+                ? ALL
+                : new Projection(userFields, postFields);
+    }
+
+    private static <T extends Enum<T>> T field(final Class<T> type, final String name, final String fullName) {
+        try {
+            return Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown field: " + fullName);
+        }
+    }
+
+    /**
+     * Checks whether all fields are projected.
+     *
+     * @return {@code true} if projection is {@link #ALL}
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Checks whether posts are projected, so they have to be fetched.
+     *
+     * @return {@code true} if at least one field of posts is projected
+     */
+    public boolean includesPosts() {
+        return userFields.contains(UserField.POSTS);
+    }
+
+    /**
+     * Gets the same projection without posts.
+     *
+     * @return projection of the same fields of user, except of posts
+     */
+    public Projection withoutPosts() {
+        final Set<UserField> fields = EnumSet.noneOf(UserField.class);
+        fields.addAll(userFields);
+        fields.remove(UserField.POSTS);
+        return new Projection(fields, EnumSet.noneOf(PostField.class));
+    }
+
+    /**
+     * Gets projected fields of user.
+     *
+     * @return fields in order they are encoded
+     */
+    public Set<UserField> getUserFields() {
+        return userFields;
+    }
+
+    /**
+     * Gets projected fields of posts.
+     *
+     * @return fields in order they are encoded, empty if posts are not projected
+     */
+    public Set<PostField> getPostFields() {
+        return postFields;
+    }
+
+    @Override
+    public String toString() {
+        return "Projection(userFields=" + userFields + ", postFields=" + postFields + ")";
+    }
+
+    /**
+     * Field of {@link User}.
+     */
+    public enum UserField {
+        NAME, USERNAME, EMAIL, POSTS
+    }
+
+    /**
+     * Field of {@link Post}.
+     */
+    public enum PostField {
+        ID, TITLE
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
+/**
+ * Implementation of {@link UserDataProvider} that holds replica of whole JSONPlaceholder dataset in memory,
+ * it is intended for read-mostly datasets that fit into memory.
+ * <p>
+ * All users and all posts are loaded by two calls of upstream when provider is created, lookups are then answered
+ * from memory without any I/O. Replica is reloaded in background every {@link Config#getRefreshInterval()} and
+ * the new snapshot atomically replaces the old one. Failed reload keeps the old snapshot. Users that did not change
+ * keep their instances, so anything keyed by identity of user survives the reload.
+ * </p>
+ * <p>
+ * Users are indexed by sorted array of primitive IDs, so the index takes two arrays and lookup is binary search.
+ * Size of replica is exposed by metric {@code user.replica.users}, its age by metric {@code user.replica.age}
+ * and reloads by metric {@code user.replica.refresh} tagged by result.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class ReplicaUserDataProvider implements UserDataProvider, Closeable {
+
+    private static final String METRIC_PREFIX = "user.replica.";
+    private static final String RESOURCE_USERS = "users";
+    private static final String RESOURCE_POSTS = "posts";
+
+    private final JSONPlaceholderUserDataProvider.Config upstream;
+    private final WebClient webClient;
+    private final LongSupplier clock;
+    private final Counter refreshed;
+    private final Counter failed;
+    private final Counter changed;
+    private final Disposable refresh;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Initialization with configuration, replica is loaded before the constructor returns.
+     *
+     * @param upstream      configuration of upstream
+     * @param config        of replica
+     * @param meterRegistry to register metrics
+     * @throws IllegalStateException if replica cannot be loaded within {@link Config#getLoadTimeout()}
+     */
+    public ReplicaUserDataProvider(final JSONPlaceholderUserDataProvider.Config upstream, final Config config,
+                                   final MeterRegistry meterRegistry) {
+        this(upstream, config, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * Initialization with custom time source.
+     *
+     * @param upstream      configuration of upstream
+     * @param config        of replica
+     * @param meterRegistry to register metrics
+     * @param clock         as time source in nanoseconds
+     */
+    ReplicaUserDataProvider(final JSONPlaceholderUserDataProvider.Config upstream, final Config config,
+                            final MeterRegistry meterRegistry, final LongSupplier clock) {
+        Assert.isTrue(!config.getRefreshInterval().isNegative() && !config.getRefreshInterval().isZero(), "Refresh interval must be positive");
+
+        LOG.debug("Configuration of replica: {}", config);
+
+        this.upstream = upstream;
+        this.webClient = new WebClientFactory(upstream.getClient(), meterRegistry)
+                .create(upstream.getBaseUrl());
+        this.clock = clock;
+        this.refreshed = counter(meterRegistry, "success", "Successful reloads of replica");
+        this.failed = counter(meterRegistry, "failure", "Failed reloads of replica");
+        this.changed = Counter.builder(METRIC_PREFIX + "changed")
+                              .description("Users that changed by reload of replica")
+                              .register(meterRegistry);
+
+        try {
+            this.snapshot = load(Snapshot.EMPTY).block(config.getLoadTimeout());
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Replica cannot be loaded from " + upstream.getBaseUrl(), e);
+        }
+        LOG.info("Replica loaded with {} users", snapshot.size());
+
+        Gauge.builder(METRIC_PREFIX + "users", this, provider -> provider.snapshot.size())
+             .description("Users in replica")
+             .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "age", this, provider -> provider.age())
+             .description("Time since replica was loaded")
+             .baseUnit("seconds")
+             .register(meterRegistry);
+
+        // reload that takes longer than interval skips the ticks, reloads never overlap
+        this.refresh = Flux.interval(config.getRefreshInterval(), config.getRefreshInterval(), Schedulers.parallel())
+                           .onBackpressureDrop()
+                           .concatMap(tick -> refresh(), 1)
+                           .subscribe();
+    }
+
+    @Override
+    public Mono<User> getById(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return getById(id.longValue());
+    }
+
+    @Override
+    public Mono<User> getById(final long id) {
+        return Mono.defer(() -> {
+            final User user = snapshot.get(id);
+            return user == null ? Mono.error(new NotFoundException("User not found")) : Mono.just(user);
+        });
+    }
+
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.defer(() -> {
+            final Snapshot current = snapshot;
+            return Flux.fromIterable(new LinkedHashSet<>(ids))
+                       .handle((id, sink) -> {
+                           final User user = current.get(id);
+                           if (user != null) {
+                               sink.next(user);
+                           }
+                       });
+        });
+    }
+
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return Flux.defer(() -> {
+            final User user = snapshot.get(id);
+            return user == null ? Flux.error(new NotFoundException("User not found")) : Flux.fromIterable(user.getPosts());
+        });
+    }
+
+    /**
+     * Stops reloads of replica.
+     */
+    @Override
+    public void close() {
+        refresh.dispose();
+    }
+
+    /**
+     * Reloads replica, failure is logged and the current snapshot is kept.
+     */
+    private Mono<Snapshot> refresh() {
+        return load(snapshot)
+                .doOnNext(loaded -> {
+                    snapshot = loaded;
+                    refreshed.increment();
+                })
+                .doOnError(e -> {
+                    LOG.warn("Replica cannot be reloaded, it is {} s old: {}", age(), e.toString());
+                    failed.increment();
+                })
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * Loads all users and all posts.
+     *
+     * @param previous snapshot whose unchanged users are reused
+     * @return new snapshot
+     */
+    private Mono<Snapshot> load(final Snapshot previous) {
+        final Mono<List<User>> users = fetch(RESOURCE_USERS, upstream.getUsersRelativePath(), User.class)
+                .collectList();
+        final Mono<Map<Long, Collection<Post>>> posts = fetch(RESOURCE_POSTS, upstream.getPostsRelativePath(),
+                JSONPlaceholderUserDataProvider.AuthoredPost.class)
+                .collectMultimap(JSONPlaceholderUserDataProvider.AuthoredPost::getUserId,
+                        JSONPlaceholderUserDataProvider.AuthoredPost::toPost);
+
+        return Mono.zip(users, posts, (users1, posts1) -> index(previous, users1, posts1));
+    }
+
+    private <T> Flux<T> fetch(final String resource, final String path, final Class<T> type) {
+        return webClient.get()
+                        .uri(path)
+                        .attribute(UpstreamMetricsFilter.RESOURCE_ATTRIBUTE, resource)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+                        .retrieve()
+                        .onStatus(HttpStatus::isError, response -> response
+                                .bodyToMono(Void.class)
+                                .then(Mono.error(new UnavailableException("Upstream responded with status " + response.statusCode()))))
+                        .bodyToFlux(type);
+    }
+
+    private Snapshot index(final Snapshot previous, final List<User> users, final Map<Long, Collection<Post>> posts) {
+        users.sort(Comparator.comparing(User::getId));
+
+        final long[] ids = new long[users.size()];
+        final User[] values = new User[users.size()];
+        int changedUsers = 0;
+        for (int i = 0; i < ids.length; i++) {
+            final User user = users.get(i);
+            final Collection<Post> userPosts = posts.get(user.getId());
+            user.setPosts(userPosts == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(userPosts)));
+
+            final User known = previous.get(user.getId());
+            ids[i] = user.getId();
+            if (user.equals(known)) {
+                values[i] = known;
+            } else {
+                values[i] = user;
+                changedUsers++;
+            }
+        }
+
+        LOG.debug("Replica loaded {} users, {} of them changed", ids.length, changedUsers);
+        changed.increment(changedUsers);
+
+        return new Snapshot(ids, values, clock.getAsLong());
+    }
+
+    private double age() {
+        return (clock.getAsLong() - snapshot.loadedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String result, final String description) {
+        return Counter.builder(METRIC_PREFIX + "refresh")
+                      .tag("result", result)
+                      .description(description)
+                      .register(meterRegistry);
+    }
+
+    /**
+     * Immutable snapshot of users, sorted by ID.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new long[0], new User[0], 0);
+
+        private final long[] ids;
+        private final User[] users;
+        private final long loadedAt;
+
+        Snapshot(final long[] ids, final User[] users, final long loadedAt) {
+            this.ids = ids;
+            this.users = users;
+            this.loadedAt = loadedAt;
+        }
+
+        User get(final long id) {
+            final int index = Arrays.binarySearch(ids, id);
+            return index < 0 ? null : users[index];
+        }
+
+        int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether users are served from replica instead of upstream.
+         */
+        private boolean enabled = false;
+        /**
+         * Interval of reloads of replica.
+         */
+        @NonNull
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        /**
+         * Maximum time to wait for the first load of replica.
+         */
+        @NonNull
+        private Duration loadTimeout = Duration.ofSeconds(30);
+    }
+}
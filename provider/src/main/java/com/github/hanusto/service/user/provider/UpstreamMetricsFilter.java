@@ -0,0 +1,94 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Filter that measures exchanges with upstream.
+ * <p>
+ * Time until response status is received is recorded by timer {@code user.upstream.requests} tagged by resource
+ * (taken from request attribute {@link #RESOURCE_ATTRIBUTE}) and status, exchanges in flight are exposed
+ * by gauge {@code user.upstream.requests.in-flight}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class UpstreamMetricsFilter implements ExchangeFilterFunction {
+
+    /**
+     * Name of request attribute with name of upstream resource.
+     */
+    static final String RESOURCE_ATTRIBUTE = UpstreamMetricsFilter.class.getName() + ".resource";
+
+    private static final String METRIC_NAME = "user.upstream.requests";
+    private static final String STATUS_IO_ERROR = "IO_ERROR";
+    private static final String STATUS_CANCELLED = "CANCELLED";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * New instance.
+     *
+     * @param meterRegistry to register metrics
+     */
+    UpstreamMetricsFilter(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder(METRIC_NAME + ".in-flight", inFlight, AtomicInteger::get)
+             .description("Exchanges with upstream in flight")
+             .strongReference(true)
+             .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(final ClientRequest request, final ExchangeFunction next) {
+        final String resource = request.attribute(RESOURCE_ATTRIBUTE).map(String::valueOf).orElse("unknown");
+
+        return Mono.defer(() -> {
+            inFlight.incrementAndGet();
+            final long start = System.nanoTime();
+
+            return next.exchange(request)
+                       .doOnSuccess(response -> record(resource, String.valueOf(response.statusCode().value()), start))
+                       .doOnError(e -> record(resource, STATUS_IO_ERROR, start))
+                       .doOnCancel(() -> record(resource, STATUS_CANCELLED, start))
+                       .doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    private void record(final String resource, final String status, final long start) {
+        Timer.builder(METRIC_NAME)
+             .tag("resource", resource)
+             .tag("status", status)
+             .description("Time until upstream responds with status")
+             .publishPercentileHistogram()
+             .register(meterRegistry)
+             .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import java.io.IOException;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.timeout.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
+/**
+ * Resource of upstream, e.g. users or posts, with its own circuit breaker and bulkhead.
+ * <p>
+ * Calls are rejected with {@link UnavailableException} when circuit breaker is open or when bulkhead is full.
+ * Timeouts and I/O errors of calls are reported as {@link UnavailableException} too, whether calls are guarded or not.
+ * State of circuit breaker and its transitions are exposed by metrics {@code user.upstream.circuit-breaker.*},
+ * available calls of bulkhead by metric {@code user.upstream.bulkhead.available}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+final class UpstreamResource {
+
+    private static final String METRIC_PREFIX = "user.upstream.";
+    private static final String TAG_RESOURCE = "resource";
+
+    private final String name;
+    private final boolean enabled;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    /**
+     * Hedging of calls, {@code null} if it is disabled.
+     */
+    private final Hedger hedger;
+
+    /**
+     * New instance.
+     *
+     * @param name          of resource
+     * @param config        of circuit breaker and bulkhead
+     * @param hedging       of calls
+     * @param meterRegistry to register metrics
+     */
+    UpstreamResource(final String name,
+                     final JSONPlaceholderUserDataProvider.Resilience config,
+                     final JSONPlaceholderUserDataProvider.Hedging hedging,
+                     final MeterRegistry meterRegistry) {
+        this.name = name;
+        this.enabled = config.isEnabled();
+        this.circuitBreaker = CircuitBreaker.of(name, CircuitBreakerConfig
+                .custom()
+                .failureRateThreshold(config.getFailureRateThreshold())
+                .ringBufferSizeInClosedState(config.getRingBufferSizeInClosedState())
+                .ringBufferSizeInHalfOpenState(config.getRingBufferSizeInHalfOpenState())
+                .waitDurationInOpenState(config.getWaitDurationInOpenState())
+                // missing user and own overload are not failures of upstream
+                .recordFailure(e -> !(e instanceof NotFoundException) && !(e instanceof BulkheadFullException))
+                .build());
+        this.bulkhead = Bulkhead.of(name, BulkheadConfig
+                .custom()
+                .maxConcurrentCalls(config.getMaxConcurrentCalls())
+                .maxWaitTime(config.getMaxWaitTime().toMillis())
+                .build());
+        this.hedger = hedging.isEnabled() ? new Hedger(name, hedging, meterRegistry) : null;
+
+        if (enabled) {
+            registerMetrics(meterRegistry);
+        }
+    }
+
+    /**
+     * Gets name of resource.
+     *
+     * @return name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Hedges call of resource if hedging is enabled, call must be cold and idempotent. Call should be already
+     * {@link #guard(Mono) guarded}, so every attempt takes its own permission of bulkhead.
+     *
+     * @param call of resource
+     * @param <T>  type of result
+     * @return hedged call
+     */
+    <T> Mono<T> hedge(final Mono<T> call) {
+        return hedger == null ? call : hedger.hedge(call);
+    }
+
+    /**
+     * Guards call of resource by circuit breaker and bulkhead.
+     *
+     * @param call of resource
+     * @param <T>  type of result
+     * @return guarded call
+     */
+    <T> Mono<T> guard(final Mono<T> call) {
+        if (!enabled) {
+            return call.onErrorMap(UpstreamResource::isUnavailability, this::unavailable);
+        }
+
+        return call.transform(BulkheadOperator.of(bulkhead))
+                   .transform(CircuitBreakerOperator.of(circuitBreaker))
+                   .onErrorMap(UpstreamResource::isUnavailability, this::unavailable);
+    }
+
+    /**
+     * Guards call of resource by circuit breaker and bulkhead.
+     *
+     * @param call of resource
+     * @param <T>  type of result
+     * @return guarded call
+     */
+    <T> Flux<T> guard(final Flux<T> call) {
+        if (!enabled) {
+            return call.onErrorMap(UpstreamResource::isUnavailability, this::unavailable);
+        }
+
+        return call.transform(BulkheadOperator.of(bulkhead))
+                   .transform(CircuitBreakerOperator.of(circuitBreaker))
+                   .onErrorMap(UpstreamResource::isUnavailability, this::unavailable);
+    }
+
+    /**
+     * Whether call failed because upstream is unavailable: call was rejected, timed out or failed on I/O,
+     * e.g. connection was refused or closed prematurely.
+     */
+    private static boolean isUnavailability(final Throwable e) {
+        return e instanceof CircuitBreakerOpenException
+                || e instanceof BulkheadFullException
+                || e instanceof TimeoutException
+                || e instanceof IOException;
+    }
+
+    private Throwable unavailable(final Throwable e) {
+        return new UnavailableException("Upstream resource '" + name + "' is unavailable", e);
+    }
+
+    private void registerMetrics(final MeterRegistry meterRegistry) {
+        Gauge.builder(METRIC_PREFIX + "circuit-breaker.state", circuitBreaker, UpstreamResource::stateValue)
+             .tag(TAG_RESOURCE, name)
+             .description("State of circuit breaker: 0 - closed, 1 - half open, 2 - open")
+             .register(meterRegistry);
+        FunctionCounter.builder(METRIC_PREFIX + "circuit-breaker.not-permitted", circuitBreaker,
+                cb -> cb.getMetrics().getNumberOfNotPermittedCalls())
+                       .tag(TAG_RESOURCE, name)
+                       .description("Calls rejected by open circuit breaker")
+                       .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "bulkhead.available", bulkhead, b -> b.getMetrics().getAvailableConcurrentCalls())
+             .tag(TAG_RESOURCE, name)
+             .description("Available concurrent calls of bulkhead")
+             .register(meterRegistry);
+
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            final CircuitBreaker.StateTransition transition = event.getStateTransition();
+            LOG.warn("Circuit breaker of upstream resource '{}' changed state: {}", name, transition);
+
+            Counter.builder(METRIC_PREFIX + "circuit-breaker.transitions")
+                   .tag(TAG_RESOURCE, name)
+                   .tag("from", transition.getFromState().name())
+                   .tag("to", transition.getToState().name())
+                   .description("Transitions of circuit breaker state")
+                   .register(meterRegistry)
+                   .increment();
+        });
+    }
+
+    private static double stateValue(final CircuitBreaker circuitBreaker) {
+        switch (circuitBreaker.getState()) {
+            case CLOSED:
+                return 0;
+            case HALF_OPEN:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+}
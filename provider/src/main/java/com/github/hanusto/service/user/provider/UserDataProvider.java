@@ -16,10 +16,15 @@
 
 package com.github.hanusto.service.user.provider;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
 import javax.validation.constraints.NotNull;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import com.github.hanusto.service.user.provider.model.Post;
 import com.github.hanusto.service.user.provider.model.User;
 import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
 
@@ -40,4 +45,98 @@ public interface UserDataProvider {
      */
     Mono<User> getById(@NotNull Long id) throws NotFoundException;
 
+    /**
+     * Gets {@link User} as Mono by its primitive ID, so lookup does not box the ID.
+     * <p>
+     * Default implementation boxes the ID, implementations that look users up by primitive ID should override it.
+     * </p>
+     *
+     * @param id of user
+     * @return publisher of {@link User}
+     * @throws NotFoundException if user not found
+     */
+    default Mono<User> getById(long id) throws NotFoundException {
+        return getById(Long.valueOf(id));
+    }
+
+    /**
+     * Gets {@link User} as Mono by its primitive ID, projected to requested fields.
+     * <p>
+     * Fields that are not projected may or may not be present in returned user. Default implementation gets complete user,
+     * implementations should skip lookups of fields that are not projected.
+     * </p>
+     *
+     * @param id         of user
+     * @param projection of user
+     * @return publisher of {@link User}
+     * @throws NotFoundException if user not found
+     */
+    default Mono<User> getById(long id, @NotNull Projection projection) throws NotFoundException {
+        return getById(id);
+    }
+
+    /**
+     * Gets {@link User}s as Flux by their IDs.
+     * <p>
+     * Users that are not found are skipped, so the result can contain less elements than requested.
+     * Default implementation resolves every user separately, implementations should merge lookups if possible.
+     * </p>
+     *
+     * @param ids of users
+     * @return publisher of found {@link User}s, in no particular order
+     */
+    default Flux<User> getByIds(@NotNull Collection<Long> ids) {
+        return Flux.fromIterable(new LinkedHashSet<>(ids))
+                   .flatMap(id -> Mono.defer(() -> getById(id))
+                                      .onErrorResume(NotFoundException.class, e -> Mono.empty()));
+    }
+
+    /**
+     * Gets {@link Post}s of user as Flux by ID of user.
+     * <p>
+     * Default implementation gets posts of whole {@link User}, implementations should stream posts as they are decoded.
+     * </p>
+     *
+     * @param id of user
+     * @return publisher of {@link Post}s
+     */
+    default Flux<Post> getPosts(@NotNull Long id) {
+        return Mono.defer(() -> getById(id))
+                   .flatMapIterable(User::getPosts);
+    }
+
+    /**
+     * Gets window of {@link Post}s of user as Flux by ID of user, posts are in the same order as by {@link #getPosts(Long)}.
+     * <p>
+     * Default implementation skips posts before the window, implementations should fetch only posts of the window.
+     * </p>
+     *
+     * @param id     of user
+     * @param offset count of posts before the window
+     * @param limit  maximum count of posts in the window
+     * @return publisher of {@link Post}s
+     */
+    default Flux<Post> getPosts(long id, long offset, int limit) {
+        return getPosts(Long.valueOf(id))
+                .skip(offset)
+                .take(limit);
+    }
+
+    /**
+     * Forgets everything that is kept about user, so it is loaded again by the next lookup.
+     * <p>
+     * Default implementation keeps nothing, decorators should invalidate their own state and then their delegate.
+     * </p>
+     *
+     * @param id of user
+     */
+    default void invalidate(long id) {
+    }
+
+    /**
+     * Forgets everything that is kept about all users, see {@link #invalidate(long)}.
+     */
+    default void invalidateAll() {
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.channel.BootstrapHandlers;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.tcp.TcpClient;
+
+/**
+ * Factory of {@link WebClient} with tuned connection pool toward upstream.
+ * <p>
+ * Connections of the pool are counted by metrics {@code user.upstream.connections.*}, tagged by name of the pool.
+ * </p>
+ *
+ * @author Tomas Hanus
+ * @see JSONPlaceholderUserDataProvider.Client
+ */
+@Slf4j
+final class WebClientFactory {
+
+    private static final String METRIC_PREFIX = "user.upstream.connections";
+    private static final String TAG_POOL = "pool";
+    private static final String POOL_HANDLER = "userDataProviderPool";
+    private static final String IDLE_HANDLER = "userDataProviderIdleEviction";
+
+    private final JSONPlaceholderUserDataProvider.Client config;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final Counter createdConnections;
+    private final Counter evictedConnections;
+    private final UpstreamMetricsFilter metricsFilter;
+    /**
+     * Initializer of new channels, pool is keyed by bootstrap handlers, so the same instance must be used for every
+     * connect, otherwise each request gets its own pool and connections are never reused.
+     */
+    private final BiConsumer<ConnectionObserver, Channel> channelInitializer = (observer, channel) -> onChannelInit(channel);
+
+    /**
+     * New instance.
+     *
+     * @param config        of client
+     * @param meterRegistry to register metrics of connection pool and exchanges
+     */
+    WebClientFactory(final JSONPlaceholderUserDataProvider.Client config, final MeterRegistry meterRegistry) {
+        this.config = config;
+
+        Gauge.builder(METRIC_PREFIX + ".open", openConnections, AtomicInteger::get)
+             .tag(TAG_POOL, config.getPoolName())
+             .description("Open connections toward upstream")
+             .strongReference(true)
+             .register(meterRegistry);
+        this.createdConnections = Counter.builder(METRIC_PREFIX + ".created")
+                                         .tag(TAG_POOL, config.getPoolName())
+                                         .description("Connections opened toward upstream")
+                                         .register(meterRegistry);
+        this.evictedConnections = Counter.builder(METRIC_PREFIX + ".evicted")
+                                         .tag(TAG_POOL, config.getPoolName())
+                                         .description("Connections closed because they were idle")
+                                         .register(meterRegistry);
+        this.metricsFilter = new UpstreamMetricsFilter(meterRegistry);
+    }
+
+    /**
+     * Creates client of upstream.
+     *
+     * @param baseUrl of upstream
+     * @return client
+     */
+    WebClient create(final String baseUrl) {
+        final ConnectionProvider connectionProvider = config.getMaxConnections() > 0
+                ? ConnectionProvider.fixed(config.getPoolName(), config.getMaxConnections(), config.getAcquireTimeout().toMillis())
+                : ConnectionProvider.elastic(config.getPoolName());
+
+        final HttpClient httpClient = HttpClient
+                .create(connectionProvider)
+                .compress(config.isCompress())
+                .keepAlive(config.isKeepAlive())
+                .tcpConfiguration(this::configure)
+                // handlers added to connection are removed when it is released to pool, so they are added for every request
+                .doOnRequest((request, connection) -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(config.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(config.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)));
+
+        return WebClient.builder()
+                        .baseUrl(baseUrl)
+                        .clientConnector(new ReactorClientHttpConnector(httpClient))
+                        .filter(metricsFilter)
+                        .build();
+    }
+
+    private TcpClient configure(final TcpClient tcpClient) {
+        return tcpClient
+                .runOn(HttpResources.get(), config.isPreferNative())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeout().toMillis())
+                .bootstrap(bootstrap -> BootstrapHandlers.updateConfiguration(bootstrap, POOL_HANDLER, channelInitializer));
+    }
+
+    private void onChannelInit(final Channel channel) {
+        createdConnections.increment();
+        openConnections.incrementAndGet();
+        channel.closeFuture().addListener(future -> openConnections.decrementAndGet());
+
+        final Duration maxIdleTime = config.getMaxIdleTime();
+        if (maxIdleTime != null && !maxIdleTime.isZero()) {
+            channel.pipeline().addFirst(IDLE_HANDLER, new IdleStateHandler(0, 0, maxIdleTime.toMillis(), TimeUnit.MILLISECONDS) {
+                @Override
+                protected void channelIdle(final ChannelHandlerContext ctx, final IdleStateEvent evt) {
+                    LOG.trace("Closing idle connection: {}", ctx.channel());
+
+                    evictedConnections.increment();
+                    ctx.close();
+                }
+            });
+        }
+    }
+}
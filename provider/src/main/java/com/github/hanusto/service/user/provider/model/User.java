@@ -31,6 +31,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public final class User {
 
+    private Long id;
     private String name;
     private String username;
     private String email;
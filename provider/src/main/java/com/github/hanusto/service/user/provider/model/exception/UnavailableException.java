@@ -0,0 +1,44 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider.model.exception;
+
+/**
+ * Unavailable Exception can occurs if data cannot be provided at the moment, e.g. upstream is failing or overloaded.
+ *
+ * @author Tomas Hanus
+ */
+public class UnavailableException extends RuntimeException {
+
+    /**
+     * Default constructor for emitting message.
+     *
+     * @param message as detail of error
+     */
+    public UnavailableException(final String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor for emitting message with cause.
+     *
+     * @param message as detail of error
+     * @param cause   of error
+     */
+    public UnavailableException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
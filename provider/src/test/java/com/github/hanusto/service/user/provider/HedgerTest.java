@@ -0,0 +1,88 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link Hedger}.
+ *
+ * @author Tomas Hanus
+ */
+class HedgerTest {
+
+    private static final Duration MIN_DELAY = Duration.ofMillis(10);
+    private static final Duration HEDGE_LATENCY = Duration.ofMillis(20);
+
+    @Test
+    void hedge_slowPrimaryRecorded() {
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final Hedger tested = new Hedger("users", createConfig(), meterRegistry);
+
+        // primary calls never answer, hedges win
+        final AtomicInteger attempts = new AtomicInteger();
+        final Mono<String> call = Mono.defer(() -> attempts.getAndIncrement() % 2 == 0
+                ? Mono.<String>never()
+                : Mono.delay(HEDGE_LATENCY).thenReturn("hedge"));
+
+        // execute, enough calls to evaluate percentile
+        for (int i = 0; i < 64; i++) {
+            assertEquals(tested.hedge(call).block(Duration.ofSeconds(1)), "hedge");
+        }
+
+        // verification, cancelled primaries are recorded at their elapsed time
+        assertEquals(meterRegistry.get("user.upstream.hedging.fired").counter().count(), 64, 0);
+        final double delay = meterRegistry.get("user.upstream.hedging.delay").gauge().value();
+        assertTrue(delay >= MIN_DELAY.plus(HEDGE_LATENCY).toNanos() / 1e9);
+    }
+
+    @Test
+    void hedge_failedHedgeIgnored() {
+        final Hedger tested = new Hedger("users", createConfig(), new SimpleMeterRegistry());
+
+        // hedge fails fast, e.g. it is rejected by bulkhead, primary answers later
+        final AtomicInteger attempts = new AtomicInteger();
+        final Mono<String> call = Mono.defer(() -> attempts.getAndIncrement() == 0
+                ? Mono.delay(Duration.ofMillis(100)).thenReturn("primary")
+                : Mono.error(new IllegalStateException("rejected")));
+
+        // execute
+        final String testedResult = tested.hedge(call).block(Duration.ofSeconds(1));
+
+        // verification
+        assertEquals(testedResult, "primary");
+        assertEquals(attempts.get(), 2);
+    }
+
+    private static JSONPlaceholderUserDataProvider.Hedging createConfig() {
+        final JSONPlaceholderUserDataProvider.Hedging config = new JSONPlaceholderUserDataProvider.Hedging();
+        config.setEnabled(true);
+        config.setMinDelay(MIN_DELAY);
+        config.setBudgetRatio(1);
+        return config;
+    }
+}
@@ -17,19 +17,38 @@
 package com.github.hanusto.service.user.provider;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.timeout.ReadTimeoutException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 
 import com.github.hanusto.service.user.provider.model.Post;
 import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
 import com.github.hanusto.service.user.test.AbstractFunctionalTest;
 
 /**
@@ -43,6 +62,7 @@ class JSONPlaceholderUserDataProviderTest extends AbstractFunctionalTest {
 
     @BeforeEach
     void testedSetup() {
+        WireMock.reset();
         TESTED = new JSONPlaceholderUserDataProvider(createConfig());
     }
 
@@ -65,12 +85,418 @@ class JSONPlaceholderUserDataProviderTest extends AbstractFunctionalTest {
 
         // verification
         assertEquals(testedResult.block(), new User(
-                "Leanne Graham", "Bret", "Sincere@april.biz", Arrays.asList(
+                1L, "Leanne Graham", "Bret", "Sincere@april.biz", Arrays.asList(
                         new Post(1L, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"),
                         new Post(2L, "qui est esse"))
         ));
     }
 
+    @Test
+    void getById_metrics() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]")));
+
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(createConfig(), meterRegistry);
+
+        // execute
+        assertThrows(NotFoundException.class, () -> tested.getById(1L).block());
+
+        // verification
+        assertEquals(meterRegistry.get("user.upstream.requests").tags("resource", "users", "status", "404").timer().count(), 1);
+        assertEquals(meterRegistry.get("user.upstream.requests.in-flight").gauge().value(), 0, 0);
+    }
+
+    @Test
+    void getById_concurrentCalls() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+
+        // execute, first subscriber cancels while the exchange is in flight
+        final Disposable cancelled = TESTED.getById(1L).subscribe();
+        final Mono<User> testedResult = TESTED.getById(1L);
+        cancelled.dispose();
+
+        // verification
+        assertEquals(testedResult.block().getName(), "Leanne Graham");
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "users/1")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1")));
+    }
+
+    @Test
+    void getById_sequentialCalls() {
+        // prepare mock
+        stubUser(1L, 0);
+
+        // execute, lookup that is never subscribed does not start or register exchange
+        TESTED.getById(1L);
+        TESTED.getById(1L).block();
+        TESTED.getById(1L).block();
+
+        // verification, finished exchange is not shared with later calls
+        WireMock.verify(2, getRequestedFor(urlEqualTo(getPath() + "users/1")));
+    }
+
+    @Test
+    void getById_readTimeout() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(2000)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+        config.getClient().setReadTimeout(Duration.ofMillis(200));
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(config);
+
+        // execute & verification
+        final Throwable testedResult = assertThrows(UnavailableException.class, () -> tested.getById(1L).block(Duration.ofSeconds(1)));
+        assertTrue(testedResult.getCause() instanceof ReadTimeoutException);
+    }
+
+    @Test
+    void getById_projectionWithoutPosts() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+
+        // execute
+        final User testedResult = TESTED.getById(1L, Projection.of("name,email")).block();
+
+        // verification, posts are not requested at all
+        assertEquals(testedResult, new User(1L, "Leanne Graham", "Bret", "Sincere@april.biz", null));
+        WireMock.verify(0, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1")));
+    }
+
+    @Test
+    void getById_conditional() {
+        // prepare mock, responses with ETags and not modified responses to requests conditional on them
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "W/\"u1\"")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "W/\"p1\"")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .withHeader("If-None-Match", equalTo("W/\"u1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "W/\"u1\"")));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .withHeader("If-None-Match", equalTo("W/\"p1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+
+        // execute
+        final User first = TESTED.getById(1L).block();
+        final User testedResult = TESTED.getById(1L).block();
+
+        // verification, not modified user is the same instance
+        assertSame(testedResult, first);
+        assertEquals(testedResult.getName(), "Leanne Graham");
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "users/1")).withHeader("If-None-Match", equalTo("W/\"u1\"")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1")).withHeader("If-None-Match", equalTo("W/\"p1\"")));
+    }
+
+    @Test
+    void getById_conditionalPostsModified() {
+        // prepare mock, user is not modified, posts are
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"u1\"")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]")));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .withHeader("If-None-Match", equalTo("\"u1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+
+        // execute
+        final User first = TESTED.getById(1L).block();
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+        final User testedResult = TESTED.getById(1L).block();
+
+        // verification, posts of the first response had no ETag, so they are requested unconditionally
+        assertNotSame(testedResult, first);
+        assertEquals(first.getPosts(), Collections.emptyList());
+        assertEquals(testedResult, new User(
+                1L, "Leanne Graham", "Bret", "Sincere@april.biz", Arrays.asList(
+                        new Post(1L, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"),
+                        new Post(2L, "qui est esse"))
+        ));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "users/1")).withHeader("If-None-Match", equalTo("\"u1\"")));
+        WireMock.verify(0, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1")).withHeader("If-None-Match", WireMock.matching(".*")));
+    }
+
+    @Test
+    void getById_conditionalInvalidated() {
+        // prepare mock, responses with ETags and not modified responses to requests conditional on them
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "W/\"u1\"")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "W/\"p1\"")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .withHeader("If-None-Match", equalTo("W/\"u1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .withHeader("If-None-Match", equalTo("W/\"p1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+
+        // execute
+        final User first = TESTED.getById(1L).block();
+        TESTED.invalidate(1L);
+        final User testedResult = TESTED.getById(1L).block();
+
+        // verification, invalidated user is requested unconditionally and decoded again
+        assertNotSame(testedResult, first);
+        assertEquals(testedResult, first);
+        WireMock.verify(0, getRequestedFor(urlEqualTo(getPath() + "users/1")).withHeader("If-None-Match", WireMock.matching(".*")));
+        WireMock.verify(0, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1")).withHeader("If-None-Match", WireMock.matching(".*")));
+    }
+
+    @Test
+    void getById_connectionRefused() throws IOException {
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            // port is closed again, so nothing listens on it
+            config.setBaseUrl("http://localhost:" + socket.getLocalPort() + getPath());
+        }
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(config);
+
+        // execute & verification
+        final Throwable testedResult = assertThrows(UnavailableException.class, () -> tested.getById(1L).block(Duration.ofSeconds(5)));
+        assertTrue(testedResult.getCause() instanceof ConnectException);
+    }
+
+    @Test
+    void getById_connectionReused() {
+        // prepare mock
+        stubUser(1L, 0);
+        stubUser(2L, 2000);
+
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+        config.getClient().setReadTimeout(Duration.ofMillis(500));
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(config, meterRegistry);
+
+        // execute, the second lookup runs on connections released by the first one
+        assertEquals(tested.getById(1L).block().getName(), "Leanne Graham");
+        final Throwable testedResult = assertThrows(UnavailableException.class, () -> tested.getById(2L).block(Duration.ofSeconds(1)));
+
+        // verification
+        assertEquals(meterRegistry.get("user.upstream.connections.created").tags("pool", "user-data-provider").counter().count(), 2, 0);
+        assertTrue(testedResult.getCause() instanceof ReadTimeoutException);
+    }
+
+    @Test
+    void getById_hedged() {
+        // prepare mock, the first call is slow and the hedge answers
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .inScenario("hedging")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .inScenario("hedging")
+                .whenScenarioStateIs("hedged")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+        config.getHedging().setEnabled(true);
+        config.getHedging().setMinDelay(Duration.ofMillis(200));
+        config.getHedging().setBudgetRatio(1);
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(config);
+        // connection is opened in advance, so the first call reaches upstream before the hedge
+        tested.getPosts(1L).blockLast();
+
+        // execute
+        final User testedResult = tested.getById(1L).block(Duration.ofSeconds(3));
+
+        // verification
+        assertEquals(testedResult.getName(), "Leanne Graham");
+        WireMock.verify(2, getRequestedFor(urlEqualTo(getPath() + "users/1")));
+    }
+
+    @Test
+    void getById_circuitOpen() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/1"))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+        config.getResilience().setRingBufferSizeInClosedState(2);
+        final JSONPlaceholderUserDataProvider tested = new JSONPlaceholderUserDataProvider(config);
+
+        // execute, failed calls open circuit breaker
+        assertThrows(UnavailableException.class, () -> tested.getById(1L).block());
+        assertThrows(UnavailableException.class, () -> tested.getById(1L).block());
+        final Throwable testedResult = assertThrows(UnavailableException.class, () -> tested.getById(1L).block());
+
+        // verification
+        assertTrue(testedResult.getMessage().contains("'users'"));
+        WireMock.verify(2, getRequestedFor(urlEqualTo(getPath() + "users/1")));
+    }
+
+    @Test
+    void getByIds() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users?id=1&id=2"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/users-1-2_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1&userId=2"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-users-1-2_response.json"))));
+
+        // execute
+        final List<User> testedResult = TESTED.getByIds(Arrays.asList(1L, 2L, 1L))
+                                              .collectSortedList((u1, u2) -> u1.getId().compareTo(u2.getId()))
+                                              .block();
+
+        // verification
+        assertEquals(testedResult, Arrays.asList(
+                new User(1L, "Leanne Graham", "Bret", "Sincere@april.biz", Arrays.asList(
+                        new Post(1L, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"),
+                        new Post(2L, "qui est esse"))),
+                new User(2L, "Ervin Howell", "Antonette", "Shanna@melissa.tv", Arrays.asList(
+                        new Post(11L, "et ea vero quia laudantium autem")))
+        ));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "users?id=1&id=2")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "posts?userId=1&userId=2")));
+    }
+
+    @Test
+    void getByIds_invalidBatchSize() {
+        final JSONPlaceholderUserDataProvider.Config config = createConfig();
+
+        // execute & verification, invalid size is rejected when configuration is bound
+        assertThrows(IllegalArgumentException.class, () -> config.setBatchSize(0));
+    }
+
+    @Test
+    void getPosts() {
+        // prepare mock
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+
+        // execute
+        final List<Post> testedResult = TESTED.getPosts(1L).collectList().block();
+
+        // verification
+        assertEquals(testedResult, Arrays.asList(
+                new Post(1L, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"),
+                new Post(2L, "qui est esse")));
+        WireMock.verify(0, getRequestedFor(urlEqualTo(getPath() + "users/1")));
+    }
+
+    @Test
+    void getPosts_window() {
+        // prepare mock, only the window is requested
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=1&_start=1&_limit=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"userId\":1,\"id\":2,\"title\":\"qui est esse\"}]")));
+
+        // execute
+        final List<Post> testedResult = TESTED.getPosts(1L, 1L, 1).collectList().block();
+
+        // verification
+        assertEquals(testedResult, Collections.singletonList(new Post(2L, "qui est esse")));
+    }
+
+    private void stubUser(final long id, final int delayMillis) {
+        WireMock.stubFor(get(urlEqualTo(getPath() + "users/" + id))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(delayMillis)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user-1_response.json"))));
+        WireMock.stubFor(get(urlEqualTo(getPath() + "posts?userId=" + id))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(delayMillis)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts-user-1_response.json"))));
+    }
+
     private static String getPath() {
         return "/" + JSONPlaceholderUserDataProviderTest.class.getSimpleName() + "/";
     }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.hanusto.service.user.provider.Projection.PostField;
+import com.github.hanusto.service.user.provider.Projection.UserField;
+
+/**
+ * Test suite for {@link Projection}.
+ *
+ * @author Tomas Hanus
+ */
+class ProjectionTest {
+
+    @Test
+    void of() {
+        final Projection tested = Projection.of(" posts.title, name ,username,");
+
+        assertEquals(tested.getUserFields(), EnumSet.of(UserField.NAME, UserField.USERNAME, UserField.POSTS));
+        assertEquals(tested.getPostFields(), EnumSet.of(PostField.TITLE));
+        assertTrue(tested.includesPosts());
+        assertFalse(tested.isAll());
+        assertFalse(Projection.of("email").includesPosts());
+        assertEquals(Projection.of("email").getPostFields(), EnumSet.noneOf(PostField.class));
+    }
+
+    @Test
+    void of_all() {
+        assertSame(Projection.of(""), Projection.ALL);
+        assertSame(Projection.of("name,username,email,posts"), Projection.ALL);
+        assertSame(Projection.of("name,username,email,posts.id,posts.title"), Projection.ALL);
+        assertEquals(Projection.of("posts").getPostFields(), EnumSet.allOf(PostField.class));
+    }
+
+    @Test
+    void of_unknownField() {
+        assertThrows(IllegalArgumentException.class, () -> Projection.of("name,phone"));
+        assertThrows(IllegalArgumentException.class, () -> Projection.of("posts.body"));
+        // ID of user is internal
+        assertThrows(IllegalArgumentException.class, () -> Projection.of("id"));
+    }
+}
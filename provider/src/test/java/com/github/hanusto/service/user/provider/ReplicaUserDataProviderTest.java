@@ -0,0 +1,163 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.provider;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.test.AbstractFunctionalTest;
+
+/**
+ * Test suite for {@link ReplicaUserDataProvider}.
+ *
+ * @author Tomas Hanus
+ */
+class ReplicaUserDataProviderTest extends AbstractFunctionalTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ReplicaUserDataProvider TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        WireMock.reset();
+        stub("users", 200, fileAsString("/users_response.json"));
+        stub("posts", 200, fileAsString("/posts_response.json"));
+    }
+
+    @AfterEach
+    void testedCleanup() {
+        if (TESTED != null) {
+            TESTED.close();
+        }
+    }
+
+    @Test
+    void getById() {
+        TESTED = new ReplicaUserDataProvider(createUpstreamConfig(), createConfig(Duration.ofMinutes(5)), meterRegistry);
+
+        // verification
+        assertEquals(TESTED.getById(1L).block(), new User(
+                1L, "Leanne Graham", "Bret", "Sincere@april.biz", Arrays.asList(
+                        new Post(1L, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"),
+                        new Post(2L, "qui est esse"))
+        ));
+        assertEquals(TESTED.getPosts(2L).collectList().block(), Arrays.asList(new Post(11L, "et ea vero quia laudantium autem")));
+        assertThrows(NotFoundException.class, () -> TESTED.getById(3L).block());
+        assertThrows(NotFoundException.class, () -> TESTED.getPosts(3L).blockLast());
+
+        final List<User> testedResult = TESTED.getByIds(Arrays.asList(2L, 3L, 1L)).collectList().block();
+        assertEquals(testedResult.size(), 2);
+        assertEquals(testedResult.get(0).getName(), "Ervin Howell");
+        assertEquals(testedResult.get(1).getName(), "Leanne Graham");
+
+        // every lookup was answered from memory
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "users")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(getPath() + "posts")));
+    }
+
+    @Test
+    void getById_refreshed() {
+        TESTED = new ReplicaUserDataProvider(createUpstreamConfig(), createConfig(Duration.ofMillis(100)), meterRegistry);
+        final User unchanged = TESTED.getById(1L).block();
+
+        // execute
+        stub("users", 200, fileAsString("/users_response.json").replace("Ervin Howell", "Ervin Howell Jr."));
+
+        // verification
+        await(() -> "Ervin Howell Jr.".equals(TESTED.getById(2L).block().getName()));
+        assertSame(TESTED.getById(1L).block(), unchanged);
+    }
+
+    @Test
+    void getById_refreshFailed() {
+        TESTED = new ReplicaUserDataProvider(createUpstreamConfig(), createConfig(Duration.ofMillis(100)), meterRegistry);
+
+        // execute
+        stub("users", 503, "");
+
+        // verification
+        await(() -> meterRegistry.get("user.replica.refresh").tag("result", "failure").counter().count() > 0);
+        assertEquals(TESTED.getById(1L).block().getName(), "Leanne Graham");
+    }
+
+    @Test
+    void create_unavailable() {
+        stub("posts", 503, "");
+
+        assertThrows(IllegalStateException.class,
+                () -> new ReplicaUserDataProvider(createUpstreamConfig(), createConfig(Duration.ofMinutes(5)), meterRegistry));
+    }
+
+    private static void await(final BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition was not met in time");
+            }
+            Thread.yield();
+        }
+    }
+
+    private static void stub(final String resource, final int status, final String body) {
+        WireMock.stubFor(get(urlEqualTo(getPath() + resource))
+                .willReturn(aResponse()
+                        .withStatus(status)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(body)));
+    }
+
+    private static String getPath() {
+        return "/" + ReplicaUserDataProviderTest.class.getSimpleName() + "/";
+    }
+
+    private static JSONPlaceholderUserDataProvider.Config createUpstreamConfig() {
+        final JSONPlaceholderUserDataProvider.Config config = new JSONPlaceholderUserDataProvider.Config();
+        config.setBaseUrl(getWireMockUrl() + getPath());
+        config.getClient().setPoolName("replica");
+
+        return config;
+    }
+
+    private static ReplicaUserDataProvider.Config createConfig(final Duration refreshInterval) {
+        final ReplicaUserDataProvider.Config config = new ReplicaUserDataProvider.Config();
+        config.setEnabled(true);
+        config.setRefreshInterval(refreshInterval);
+
+        return config;
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
+/**
+ * Decorator of {@link UserDataProvider} that caches resolved {@link User}s.
+ * <p>
+ * Only successfully resolved users are cached, failures are not remembered. Entry accessed after
+ * {@link Config#getRefreshAfter()} is refreshed in background and its stale value is served until the refresh completes.
+ * Entry expires after {@link Config#getExpireAfter()} shortened by random jitter, so entries written together
+ * do not expire together.
+ * </p>
+ * <p>
+ * Fresh users, that are not due to refresh yet, are also held in {@link LongKeyedCache} keyed by primitive ID,
+ * so lookup by {@link #getById(long)} of hot user neither boxes the ID nor goes through the cache of futures.
+ * </p>
+ * <p>
+ * Last successfully resolved users are kept for {@link Config#getStaleIfError()}. When upstream is unavailable,
+ * user is served from them instead of failing the request.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class CachingUserDataProvider implements UserDataProvider {
+
+    private static final String CACHE_NAME = "userProfiles";
+    private static final String FRESH_METRIC_NAME = "user.profiles.cache.fresh.size";
+
+    private final UserDataProvider delegate;
+    private final AsyncLoadingCache<Long, User> cache;
+    /**
+     * Fresh users keyed by primitive ID, {@code null} if it is disabled.
+     */
+    private final LongKeyedCache<User> freshUsers;
+    private final long refreshAfterNanos;
+    /**
+     * Last known good users, {@code null} if serving of stale users is disabled.
+     */
+    private final Cache<Long, User> lastKnownGood;
+
+    /**
+     * Initialization with configuration, statistics of cache are exposed as metrics {@code cache.*}
+     * with tag {@code cache=userProfiles}.
+     *
+     * @param delegate      to load users
+     * @param config        of cache
+     * @param meterRegistry to register metrics
+     */
+    public CachingUserDataProvider(final UserDataProvider delegate, final Config config, final MeterRegistry meterRegistry) {
+        this(delegate, config, Ticker.systemTicker(), ForkJoinPool.commonPool());
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+        if (freshUsers != null) {
+            Gauge.builder(FRESH_METRIC_NAME, freshUsers, LongKeyedCache::size)
+                 .description("Fresh users keyed by primitive ID")
+                 .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Initialization with custom time source and executor of background refreshes.
+     *
+     * @param delegate to load users
+     * @param config   of cache
+     * @param ticker   as time source
+     * @param executor of background refreshes
+     */
+    CachingUserDataProvider(final UserDataProvider delegate, final Config config, final Ticker ticker, final Executor executor) {
+        Assert.isTrue(config.getRefreshAfter().compareTo(config.getExpireAfter()) < 0, "Refresh must be scheduled before expiration");
+        Assert.isTrue(config.getJitter() >= 0 && config.getJitter() < 1, "Jitter must be in range [0, 1)");
+
+        LOG.debug("Configuration of cache: {}", config);
+
+        this.delegate = delegate;
+        this.refreshAfterNanos = config.getRefreshAfter().toNanos();
+        this.freshUsers = config.getFreshMaximumSize() > 0 ? new LongKeyedCache<>(config.getFreshMaximumSize(), ticker::read) : null;
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(config.getMaximumSize())
+                             .refreshAfterWrite(config.getRefreshAfter().toNanos(), TimeUnit.NANOSECONDS)
+                             .expireAfter(new JitteredExpiry(config.getExpireAfter(), config.getJitter()))
+                             .ticker(ticker)
+                             .executor(executor)
+                             .recordStats()
+                             .buildAsync((id, ignored) -> load(id));
+        this.lastKnownGood = config.getStaleIfError().isZero()
+                ? null
+                : Caffeine.newBuilder()
+                          .maximumSize(config.getMaximumSize())
+                          .expireAfterWrite(config.getStaleIfError().toNanos(), TimeUnit.NANOSECONDS)
+                          .ticker(ticker)
+                          .executor(executor)
+                          .build();
+    }
+
+    @Override
+    public Mono<User> getById(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return getById(id.longValue());
+    }
+
+    @Override
+    public Mono<User> getById(final long id) {
+        return Mono.defer(() -> {
+            final User fresh = freshUsers == null ? null : freshUsers.get(id);
+            if (fresh != null) {
+                return Mono.just(fresh);
+            }
+
+            final CompletableFuture<User> future = cache.get(id);
+            return Mono.fromFuture(future)
+                       .doOnNext(user -> holdFresh(id, future, user));
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Projection with posts is looked up as complete user. Projection without posts is answered from cache if user
+     * is cached, otherwise it is fetched by delegate and not cached, as the user may not be complete.
+     * </p>
+     */
+    @Override
+    public Mono<User> getById(final long id, final Projection projection) {
+        Assert.notNull(projection, "Projection must not be null");
+
+        if (projection.includesPosts()) {
+            return getById(id);
+        }
+        return Mono.defer(() -> {
+            final User fresh = freshUsers == null ? null : freshUsers.get(id);
+            if (fresh != null) {
+                return Mono.just(fresh);
+            }
+
+            final CompletableFuture<User> cached = cache.getIfPresent(id);
+            return cached != null ? Mono.fromFuture(cached) : delegate.getById(id, projection);
+        });
+    }
+
+    /**
+     * Holds user keyed by primitive ID until it is due to refresh, so it is never served longer than by cache of futures.
+     * User is not held if its entry was replaced meanwhile, e.g. by refresh.
+     */
+    private void holdFresh(final long id, final CompletableFuture<User> future, final User user) {
+        if (freshUsers == null) {
+            return;
+        }
+
+        final long ttlNanos = cache.synchronous().policy().refreshAfterWrite()
+                                   .flatMap(refresh -> {
+                                       final OptionalLong age = refresh.ageOf(id, TimeUnit.NANOSECONDS);
+                                       return age.isPresent() ? Optional.of(refreshAfterNanos - age.getAsLong()) : Optional.empty();
+                                   })
+                                   .orElse(0L);
+        if (ttlNanos > 0) {
+            freshUsers.put(id, user, ttlNanos);
+            // entry replaced while the user was put must not be shadowed by it
+            if (cache.getIfPresent(id) != future) {
+                freshUsers.remove(id);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every ID is looked up in cache first, only missing users are fetched by delegate and cached.
+     * </p>
+     */
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.defer(() -> {
+            final List<CompletableFuture<User>> hits = new ArrayList<>();
+            final List<Long> misses = new ArrayList<>();
+            for (Long id : new LinkedHashSet<>(ids)) {
+                final CompletableFuture<User> cached = cache.getIfPresent(id);
+                if (cached == null) {
+                    misses.add(id);
+                } else {
+                    hits.add(cached);
+                }
+            }
+
+            final Flux<User> cachedUsers = Flux
+                    .fromIterable(hits)
+                    .flatMap(cached -> Mono.fromFuture(cached)
+                                           .onErrorResume(NotFoundException.class, e -> Mono.empty()));
+
+            final Flux<User> fetchedUsers = misses.isEmpty()
+                    ? Flux.empty()
+                    : delegate.getByIds(misses)
+                              .doOnNext(user -> {
+                                  cache.put(user.getId(), CompletableFuture.completedFuture(user));
+                                  if (freshUsers != null) {
+                                      freshUsers.remove(user.getId());
+                                  }
+                                  remember(user.getId(), user);
+                              });
+
+            return Flux.merge(cachedUsers, fetchedUsers);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Posts of cached user are streamed from cache, otherwise they are streamed by delegate and nothing is cached.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return Flux.defer(() -> {
+            final User fresh = freshUsers == null ? null : freshUsers.get(id);
+            if (fresh != null) {
+                return Flux.fromIterable(fresh.getPosts());
+            }
+
+            final CompletableFuture<User> cached = cache.getIfPresent(id);
+
+            return cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                    ? Mono.fromFuture(cached).flatMapIterable(User::getPosts)
+                    : delegate.getPosts(id);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Window of posts of cached user is taken from cache, otherwise only the window is fetched by delegate.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final long id, final long offset, final int limit) {
+        return Flux.defer(() -> {
+            final User fresh = freshUsers == null ? null : freshUsers.get(id);
+            if (fresh != null) {
+                return Flux.fromIterable(fresh.getPosts()).skip(offset).take(limit);
+            }
+
+            final CompletableFuture<User> cached = cache.getIfPresent(id);
+
+            return cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                    ? Mono.fromFuture(cached).flatMapIterable(User::getPosts).skip(offset).take(limit)
+                    : delegate.getPosts(id, offset, limit);
+        });
+    }
+
+    /**
+     * Gets cached user without loading it, user that is still being loaded is not waited for.
+     *
+     * @param id of user
+     * @return user, {@code null} if it is not cached
+     */
+    public User getIfPresent(final long id) {
+        final User fresh = freshUsers == null ? null : freshUsers.get(id);
+        if (fresh != null) {
+            return fresh;
+        }
+
+        final CompletableFuture<User> cached = cache.getIfPresent(id);
+        return cached != null && cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+    }
+
+    /**
+     * Gets decorated provider.
+     *
+     * @return provider that loads users
+     */
+    public UserDataProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets estimated count of cached users.
+     *
+     * @return count of users
+     */
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * Gets statistics of cache since it was created.
+     *
+     * @return statistics of cache
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * Invalidates cached user, including its fresh and last known good entries, and then in delegate, so it is loaded
+     * again on next lookup.
+     *
+     * @param id of user
+     */
+    @Override
+    public void invalidate(final long id) {
+        cache.synchronous().invalidate(id);
+        if (freshUsers != null) {
+            freshUsers.remove(id);
+        }
+        if (lastKnownGood != null) {
+            lastKnownGood.invalidate(id);
+        }
+        delegate.invalidate(id);
+    }
+
+    /**
+     * Invalidates all cached users, including fresh and last known good entries, and then all users in delegate.
+     */
+    @Override
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        if (freshUsers != null) {
+            freshUsers.clear();
+        }
+        if (lastKnownGood != null) {
+            lastKnownGood.invalidateAll();
+        }
+        delegate.invalidateAll();
+    }
+
+    /**
+     * Loads user by delegate, empty result completes future with {@code null} so nothing is cached.
+     * If upstream is unavailable, last known good user is served.
+     *
+     * @param id of user
+     * @return future of user
+     */
+    private CompletableFuture<User> load(final Long id) {
+        return Mono.defer(() -> delegate.getById(id.longValue()))
+                   .doOnNext(user -> remember(id, user))
+                   .onErrorResume(UnavailableException.class, e -> stale(id, e))
+                   .toFuture();
+    }
+
+    private void remember(final Long id, final User user) {
+        if (lastKnownGood != null) {
+            lastKnownGood.put(id, user);
+        }
+    }
+
+    private Mono<User> stale(final Long id, final UnavailableException e) {
+        final User user = lastKnownGood == null ? null : lastKnownGood.getIfPresent(id);
+        if (user == null) {
+            return Mono.error(e);
+        }
+
+        LOG.debug("Serving stale user {}: {}", id, e.getMessage());
+        return Mono.just(user);
+    }
+
+    /**
+     * Expiration of entries shortened by random jitter.
+     */
+    static final class JitteredExpiry implements Expiry<Long, User> {
+
+        private final long expireAfterNanos;
+        private final double jitter;
+
+        JitteredExpiry(final Duration expireAfter, final double jitter) {
+            this.expireAfterNanos = expireAfter.toNanos();
+            this.jitter = jitter;
+        }
+
+        @Override
+        public long expireAfterCreate(final Long key, final User value, final long currentTime) {
+            return (long) (expireAfterNanos * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+
+        @Override
+        public long expireAfterUpdate(final Long key, final User value, final long currentTime, final long currentDuration) {
+            // refreshed value starts its own lifetime
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final Long key, final User value, final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether users are cached.
+         */
+        private boolean enabled = true;
+        /**
+         * Maximum count of cached users.
+         */
+        private long maximumSize = 10_000;
+        /**
+         * Age of entry after that it is refreshed in background on access.
+         */
+        @NonNull
+        private Duration refreshAfter = Duration.ofSeconds(15);
+        /**
+         * Age of entry after that it expires, if it was not refreshed meanwhile.
+         */
+        @NonNull
+        private Duration expireAfter = Duration.ofSeconds(60);
+        /**
+         * Maximum part of {@link #expireAfter} that is randomly cut off from lifetime of each entry.
+         */
+        private double jitter = 0.1;
+        /**
+         * Time for that last known good user is served when upstream is unavailable, zero disables it.
+         */
+        @NonNull
+        private Duration staleIfError = Duration.ofHours(1);
+        /**
+         * Maximum count of fresh users held keyed by primitive ID, zero disables it.
+         */
+        private int freshMaximumSize = 4096;
+    }
+}
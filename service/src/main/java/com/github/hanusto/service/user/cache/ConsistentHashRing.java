@@ -0,0 +1,84 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Ring of consistent hashing that assigns owner node to every ID.
+ * <p>
+ * Every node is placed on the ring at several virtual points, ID is owned by the node of the first point
+ * at or after hash of the ID. When node is added or removed, only IDs of its points change owner.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    /**
+     * Initialization with nodes.
+     *
+     * @param nodes        of ring, duplicates are placed once
+     * @param virtualNodes count of points of every node
+     */
+    ConsistentHashRing(final Collection<String> nodes, final int virtualNodes) {
+        Assert.notEmpty(nodes, "Nodes must not be empty");
+        Assert.isTrue(virtualNodes > 0, "Count of virtual nodes must be positive");
+
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                final byte[] hash = DigestUtils.md5Digest((node + "#" + i).getBytes(StandardCharsets.UTF_8));
+                // colliding point keeps the smaller node, so every instance builds the same ring
+                points.merge(ByteBuffer.wrap(hash).getLong(), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * Gets owner of ID.
+     *
+     * @param id to look up
+     * @return owner node
+     */
+    String owner(final long id) {
+        final Map.Entry<Long, String> point = points.ceilingEntry(mix(id));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Spreads sequential IDs evenly over the ring, finalizer of MurmurHash3.
+     */
+    private static long mix(final long id) {
+        long hash = id;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Decorator of {@link UserDataProvider} that caches resolved {@link User}s on disk by {@link DiskProfileCache}.
+ * <p>
+ * It is second tier of cache below {@link CachingUserDataProvider}, its entries survive restart of service,
+ * so cold in-memory cache is filled from disk instead of upstream. Users are stored encoded to JSON, they are encoded
+ * and written by writer of {@link DiskProfileCache}, not by thread that resolved them.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class DiskCachingUserDataProvider implements UserDataProvider {
+
+    static final String METRIC_NAME = "user.profiles.cache.disk";
+
+    private final UserDataProvider delegate;
+    private final DiskProfileCache cache;
+    private final ObjectMapper objectMapper;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter dropped;
+
+    /**
+     * Initialization with cache.
+     *
+     * @param delegate      to load users
+     * @param cache         of encoded profiles
+     * @param objectMapper  to encode and decode profiles
+     * @param meterRegistry to register metrics
+     */
+    public DiskCachingUserDataProvider(final UserDataProvider delegate, final DiskProfileCache cache, final ObjectMapper objectMapper,
+                                       final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.objectMapper = objectMapper;
+        this.hits = counter(meterRegistry, "hit", "Users found on disk");
+        this.misses = counter(meterRegistry, "miss", "Users passed to upstream");
+        this.dropped = Counter.builder(METRIC_NAME + ".dropped")
+                              .description("Users not written to disk, as its writer was behind")
+                              .register(meterRegistry);
+
+        Gauge.builder(METRIC_NAME + ".size", cache, DiskProfileCache::size)
+             .description("Count of users on disk")
+             .register(meterRegistry);
+        Gauge.builder(METRIC_NAME + ".used", cache, DiskProfileCache::usedBytes)
+             .description("Bytes taken in segment")
+             .baseUnit("bytes")
+             .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<User> getById(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return getById(id.longValue());
+    }
+
+    @Override
+    public Mono<User> getById(final long id) {
+        return Mono.defer(() -> {
+            final User cached = read(id);
+            if (cached != null) {
+                hits.increment();
+                return Mono.just(cached);
+            }
+
+            misses.increment();
+            return delegate.getById(id)
+                           .doOnNext(this::write);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Projection with posts is looked up as complete user. Projection without posts is answered from disk if it is cached,
+     * otherwise it is fetched by delegate and not cached, as the user may not be complete.
+     * </p>
+     */
+    @Override
+    public Mono<User> getById(final long id, final Projection projection) {
+        Assert.notNull(projection, "Projection must not be null");
+
+        if (projection.includesPosts()) {
+            return getById(id);
+        }
+        return Mono.defer(() -> {
+            final User cached = read(id);
+            if (cached != null) {
+                hits.increment();
+                return Mono.just(cached);
+            }
+
+            misses.increment();
+            return delegate.getById(id, projection);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every ID is looked up on disk first, only missing users are fetched by delegate and cached.
+     * </p>
+     */
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.defer(() -> {
+            final List<User> found = new ArrayList<>();
+            final List<Long> missing = new ArrayList<>();
+            for (Long id : new LinkedHashSet<>(ids)) {
+                final User cached = read(id);
+                if (cached == null) {
+                    missing.add(id);
+                } else {
+                    found.add(cached);
+                }
+            }
+            hits.increment(found.size());
+            misses.increment(missing.size());
+
+            final Flux<User> fetched = missing.isEmpty()
+                    ? Flux.empty()
+                    : delegate.getByIds(missing).doOnNext(this::write);
+
+            return Flux.concat(Flux.fromIterable(found), fetched);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Posts of user found on disk are streamed from it, otherwise they are streamed by delegate and nothing is cached.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return Flux.defer(() -> {
+            final User cached = read(id);
+
+            return cached != null
+                    ? Flux.fromIterable(cached.getPosts())
+                    : delegate.getPosts(id);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Window of posts of user found on disk is taken from it, otherwise only the window is fetched by delegate.
+     * </p>
+     */
+    @Override
+    public Flux<Post> getPosts(final long id, final long offset, final int limit) {
+        return Flux.defer(() -> {
+            final User cached = read(id);
+
+            return cached != null
+                    ? Flux.fromIterable(cached.getPosts()).skip(offset).take(limit)
+                    : delegate.getPosts(id, offset, limit);
+        });
+    }
+
+    @Override
+    public void invalidate(final long id) {
+        cache.invalidate(id);
+        delegate.invalidate(id);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+        delegate.invalidateAll();
+    }
+
+    /**
+     * Reads user from disk, profile that cannot be decoded is treated as missing.
+     */
+    private User read(final long id) {
+        final byte[] profile = cache.get(id);
+        if (profile == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(profile, User.class);
+        } catch (IOException e) {
+            LOG.warn("Profile of user {} on disk cannot be decoded: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(final User user) {
+        if (!cache.putLater(user.getId(), () -> encode(user))) {
+            dropped.increment();
+        }
+    }
+
+    private byte[] encode(final User user) {
+        try {
+            return objectMapper.writeValueAsBytes(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Profile cannot be encoded", e);
+        }
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String result, final String description) {
+        return Counter.builder(METRIC_NAME)
+                      .tag("result", result)
+                      .description(description)
+                      .register(meterRegistry);
+    }
+}
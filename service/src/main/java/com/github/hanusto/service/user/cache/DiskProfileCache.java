@@ -0,0 +1,435 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cache of encoded profiles persisted in memory-mapped, append-only segment file, so it survives restart of service.
+ * <p>
+ * Every put appends record {@code [length, crc, id, expiration, profile]} to the segment, in-memory index points
+ * to the latest record of every ID. Index is rebuilt by scan of the segment on startup, scan stops at the first
+ * record that is not complete, so torn write of crashed service is dropped. Records expire after {@link Config#getTtl()}
+ * of wall clock time, so time spent while the service is down counts too.
+ * </p>
+ * <p>
+ * When the segment is full, it is compacted: the latest live records are copied to new segment that atomically
+ * replaces the old one, superseded and expired records are dropped. If live records still do not leave room
+ * for the new one, the segment is cleared. Reads are lock-free, writes are serialized.
+ * </p>
+ * <p>
+ * Callers on request threads write by {@link #putLater(long, Supplier)}, it hands the profile to single writer thread
+ * with bounded queue, so requests never wait for the lock, compaction or flush of segment.
+ * </p>
+ *
+ * @author Tomas Hanus
+ * @see DiskCachingUserDataProvider
+ */
+@Slf4j
+public class DiskProfileCache implements Closeable {
+
+    /**
+     * Size of record header: length, crc, id and expiration.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final String COMPACTION_SUFFIX = ".compacting";
+    private static final long WRITER_SHUTDOWN_SECONDS = 10;
+
+    private final Path path;
+    private final Path compactionPath;
+    private final int segmentSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ThreadPoolExecutor writer;
+
+    private volatile Segment segment;
+
+    /**
+     * Initialization with configuration, existing segment is loaded.
+     *
+     * @param config of cache
+     */
+    public DiskProfileCache(final Config config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    /**
+     * Initialization with custom time source, existing segment is loaded.
+     *
+     * @param config of cache
+     * @param clock  as time source in epoch milliseconds
+     */
+    DiskProfileCache(final Config config, final LongSupplier clock) {
+        Assert.isTrue(config.getSegmentSize().toBytes() > HEADER_SIZE && config.getSegmentSize().toBytes() <= Integer.MAX_VALUE,
+                "Segment size must be in range of header size and 2GB");
+        Assert.isTrue(!config.getTtl().isNegative() && !config.getTtl().isZero(), "TTL must be positive");
+        Assert.isTrue(config.getWriteQueueSize() > 0, "Write queue size must be positive");
+
+        LOG.debug("Configuration of disk cache: {}", config);
+
+        this.path = Paths.get(config.getPath()).toAbsolutePath();
+        this.compactionPath = path.resolveSibling(path.getFileName() + COMPACTION_SUFFIX);
+        this.segmentSize = (int) config.getSegmentSize().toBytes();
+        this.ttlMillis = config.getTtl().toMillis();
+        this.clock = clock;
+
+        try {
+            Files.createDirectories(path.getParent());
+            this.segment = Segment.load(map(path, segmentSize));
+        } catch (IOException e) {
+            throw new IllegalStateException("Segment of disk cache cannot be opened: " + path, e);
+        }
+
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("disk-cache-writer-");
+        threadFactory.setDaemon(true);
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getWriteQueueSize()),
+                threadFactory);
+
+        LOG.info("Disk cache loaded {} profiles from {}", segment.index.size(), path);
+    }
+
+    /**
+     * Gets encoded profile of user.
+     *
+     * @param id of user
+     * @return encoded profile, {@code null} if it is not cached or it has expired
+     */
+    public byte[] get(final long id) {
+        final Segment current = segment;
+        final Integer offset = current.index.get(id);
+        if (offset == null) {
+            return null;
+        }
+
+        final ByteBuffer record = current.buffer.duplicate();
+        record.position(offset);
+        final int length = record.getInt();
+        record.position(offset + 16);
+        if (record.getLong() - clock.getAsLong() <= 0) {
+            return null;
+        }
+
+        final byte[] profile = new byte[length];
+        record.get(profile);
+        return profile;
+    }
+
+    /**
+     * Puts encoded profile of user, it replaces the previous one. Profile that does not fit into segment is not cached.
+     *
+     * @param id      of user
+     * @param profile encoded profile
+     */
+    public synchronized void put(final long id, final byte[] profile) {
+        final int recordSize = HEADER_SIZE + profile.length;
+        if (recordSize > segmentSize) {
+            LOG.debug("Profile of user {} does not fit into segment: {} bytes", id, profile.length);
+            return;
+        }
+
+        if (segment.position + recordSize > segmentSize) {
+            compact(recordSize);
+        }
+
+        segment.append(id, clock.getAsLong() + ttlMillis, profile);
+    }
+
+    /**
+     * Puts profile of user in background by writer thread, it is encoded by the writer too. Profile is dropped
+     * if writer is behind by {@link Config#getWriteQueueSize()} profiles.
+     *
+     * @param id      of user
+     * @param profile supplier of encoded profile
+     * @return {@code false} if profile was dropped
+     */
+    public boolean putLater(final long id, final Supplier<byte[]> profile) {
+        try {
+            writer.execute(() -> {
+                try {
+                    put(id, profile.get());
+                } catch (RuntimeException e) {
+                    LOG.warn("Profile of user {} cannot be written to disk: {}", id, e.getMessage());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Invalidates profile of user. Its record is expired in place, so it is not served after restart either.
+     *
+     * @param id of user
+     */
+    public synchronized void invalidate(final long id) {
+        final Integer offset = segment.index.remove(id);
+        if (offset != null) {
+            segment.expire(offset);
+        }
+    }
+
+    /**
+     * Invalidates all profiles, segment is replaced by empty one.
+     */
+    public synchronized void invalidateAll() {
+        try {
+            replace(newSegment());
+        } catch (IOException e) {
+            throw new IllegalStateException("Segment of disk cache cannot be cleared: " + path, e);
+        }
+    }
+
+    /**
+     * Gets count of profiles in index, including expired ones that were not compacted yet.
+     *
+     * @return count of profiles
+     */
+    public int size() {
+        return segment.index.size();
+    }
+
+    /**
+     * Gets count of bytes taken by records in segment, including superseded and expired ones.
+     *
+     * @return size in bytes
+     */
+    public int usedBytes() {
+        return segment.position;
+    }
+
+    /**
+     * Finishes pending writes and flushes segment to disk.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(WRITER_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Pending writes of disk cache did not finish in {} seconds", WRITER_SHUTDOWN_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Replaces segment by new one with the latest live records, or by empty one if they would not leave room for record.
+     *
+     * @param required size of record to be appended
+     */
+    private void compact(final int required) {
+        final long start = System.nanoTime();
+        final long now = clock.getAsLong();
+
+        try {
+            final Segment target = newSegment();
+            final ByteBuffer source = segment.buffer.duplicate();
+            for (Map.Entry<Long, Integer> entry : segment.index.entrySet()) {
+                source.limit(segmentSize).position(entry.getValue());
+                final int length = source.getInt();
+                source.position(entry.getValue() + 16);
+                final long expiration = source.getLong();
+                if (expiration - now > 0 && target.position + HEADER_SIZE + length + required <= segmentSize) {
+                    final byte[] profile = new byte[length];
+                    source.get(profile);
+                    target.append(entry.getKey(), expiration, profile);
+                }
+            }
+            if (target.position + required > segmentSize) {
+                LOG.warn("Live profiles do not leave room in segment of disk cache, it is cleared");
+                target.clear();
+            }
+            final int previousPosition = segment.position;
+            replace(target);
+            LOG.debug("Disk cache compacted from {} to {} bytes in {} ms", previousPosition, target.position,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (IOException e) {
+            // old segment stays untouched, it keeps serving the profiles it has
+            throw new IllegalStateException("Segment of disk cache cannot be compacted: " + path, e);
+        }
+    }
+
+    /**
+     * Maps new empty segment, it replaces the current one by {@link #replace(Segment)}.
+     */
+    private Segment newSegment() throws IOException {
+        Files.deleteIfExists(compactionPath);
+        return new Segment(map(compactionPath, segmentSize));
+    }
+
+    /**
+     * Atomically replaces segment file by file of target segment, readers of the old segment are not affected.
+     */
+    private void replace(final Segment target) throws IOException {
+        target.buffer.force();
+        Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        segment = target;
+    }
+
+    private static MappedByteBuffer map(final Path path, final int size) throws IOException {
+        // mapping stays valid after channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int checksum(final ByteBuffer record, final int offset, final int length) {
+        final ByteBuffer checked = record.duplicate();
+        checked.limit(offset + HEADER_SIZE + length).position(offset + 8);
+
+        final CRC32 crc = new CRC32();
+        crc.update(checked);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Mapped segment file with index of its records. Index is published only after its record is written, so
+     * readers never see incomplete record.
+     */
+    private static final class Segment {
+
+        private final MappedByteBuffer buffer;
+        private final ConcurrentMap<Long, Integer> index = new ConcurrentHashMap<>();
+        /**
+         * Guarded by {@link DiskProfileCache}.
+         */
+        private int position;
+
+        private Segment(final MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Rebuilds index of segment by scan of its records.
+         */
+        static Segment load(final MappedByteBuffer buffer) {
+            final Segment segment = new Segment(buffer);
+            final int capacity = buffer.capacity();
+
+            int offset = 0;
+            while (offset + HEADER_SIZE <= capacity) {
+                final int length = buffer.getInt(offset);
+                if (length <= 0 || length > capacity - offset - HEADER_SIZE
+                        || buffer.getInt(offset + 4) != checksum(buffer, offset, length)) {
+                    break;
+                }
+                segment.index.put(buffer.getLong(offset + 8), offset);
+                offset += HEADER_SIZE + length;
+            }
+            segment.position = offset;
+            if (offset + HEADER_SIZE <= capacity) {
+                // tail after the last complete record is overwritten by next append, so its length must not look valid
+                buffer.putInt(offset, 0);
+            }
+
+            return segment;
+        }
+
+        void append(final long id, final long expiration, final byte[] profile) {
+            final int offset = position;
+            final ByteBuffer record = buffer.duplicate();
+            record.position(offset + 8);
+            record.putLong(id);
+            record.putLong(expiration);
+            record.put(profile);
+            // length is written last, it marks the record as complete
+            record.putInt(offset + 4, checksum(record, offset, profile.length));
+            record.putInt(offset, profile.length);
+
+            position = offset + HEADER_SIZE + profile.length;
+            if (position + HEADER_SIZE <= buffer.capacity()) {
+                record.putInt(position, 0);
+            }
+            index.put(id, offset);
+        }
+
+        /**
+         * Expires record at offset, its checksum is updated, so the record stays valid for scan of segment.
+         */
+        void expire(final int offset) {
+            buffer.putLong(offset + 16, 0L);
+            buffer.putInt(offset + 4, checksum(buffer, offset, buffer.getInt(offset)));
+        }
+
+        void clear() {
+            index.clear();
+            position = 0;
+            buffer.putInt(0, 0);
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether profiles are cached on disk.
+         */
+        private boolean enabled = false;
+        /**
+         * Path of segment file.
+         */
+        @NonNull
+        private String path = "cache/user-profiles.segment";
+        /**
+         * Size of segment file, it is mapped to memory as a whole.
+         */
+        @NonNull
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /**
+         * Time for that profile is served from disk.
+         */
+        @NonNull
+        private Duration ttl = Duration.ofHours(1);
+        /**
+         * Maximum count of profiles waiting for writer, further ones are not cached.
+         */
+        private int writeQueueSize = 1024;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Profile encoded to UTF-8 JSON, ready to be written to response, with strong ETag derived from its content.
+ * <p>
+ * Compressed representations are created on first request of their coding and kept with the profile, so profile is
+ * compressed only once. Profile smaller than threshold is not compressed.
+ * </p>
+ *
+ * @author Tomas Hanus
+ * @see EncodedProfileCache
+ */
+public final class EncodedProfile {
+
+    private final Representation identity;
+    private final boolean direct;
+    private final boolean compressible;
+    private volatile Representation gzip;
+    private volatile Representation deflate;
+
+    /**
+     * New instance.
+     *
+     * @param json               encoded profile
+     * @param direct             whether to hold the profile and its compressed representations off-heap
+     * @param compressionMinSize minimum size of profile that is compressed, negative disables compression
+     */
+    EncodedProfile(final byte[] json, final boolean direct, final long compressionMinSize) {
+        final String hash = DigestUtils.md5DigestAsHex(json);
+
+        this.identity = new Representation(Coding.IDENTITY, json, '"' + hash + '"', direct);
+        this.direct = direct;
+        this.compressible = compressionMinSize >= 0 && json.length >= compressionMinSize;
+    }
+
+    /**
+     * Gets size of encoded profile.
+     *
+     * @return size in bytes
+     */
+    public int size() {
+        return identity.size();
+    }
+
+    /**
+     * Gets strong ETag of encoded profile, the same content has the same ETag.
+     *
+     * @return quoted hash of content
+     */
+    public String etag() {
+        return identity.etag();
+    }
+
+    /**
+     * Wraps encoded profile to buffer, the content is not copied.
+     *
+     * @param bufferFactory of response
+     * @return buffer with encoded profile
+     */
+    public DataBuffer asDataBuffer(final DataBufferFactory bufferFactory) {
+        return identity.asDataBuffer(bufferFactory);
+    }
+
+    /**
+     * Gets representation of profile in given coding, it is compressed on first request.
+     *
+     * @param coding accepted by client
+     * @return representation in given coding, or not compressed one if profile is not compressible or compression does not
+     * make it smaller
+     */
+    public Representation representation(final Coding coding) {
+        if (coding == Coding.IDENTITY || !compressible) {
+            return identity;
+        }
+
+        // concurrent requests may compress the profile twice, both results are the same
+        if (coding == Coding.GZIP) {
+            Representation result = gzip;
+            if (result == null) {
+                gzip = result = compress(coding);
+            }
+            return result;
+        }
+        Representation result = deflate;
+        if (result == null) {
+            deflate = result = compress(coding);
+        }
+        return result;
+    }
+
+    private Representation compress(final Coding coding) {
+        final byte[] json = new byte[identity.size()];
+        identity.content.duplicate().get(json);
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 2);
+        try (DeflaterOutputStream output = coding == Coding.GZIP ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            output.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Profile cannot be compressed", e);
+        }
+
+        if (compressed.size() >= json.length) {
+            return identity;
+        }
+        final String etag = identity.etag().substring(0, identity.etag().length() - 1) + '-' + coding.getName() + '"';
+        return new Representation(coding, compressed.toByteArray(), etag, direct);
+    }
+
+    /**
+     * Content coding of profile, as in {@code Content-Encoding} header.
+     */
+    public enum Coding {
+        IDENTITY("identity"),
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String name;
+
+        Coding(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets name of coding.
+         *
+         * @return name as in {@code Content-Encoding} header
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Profile in one content coding, each representation has its own ETag.
+     */
+    public static final class Representation {
+
+        private final Coding coding;
+        private final ByteBuffer content;
+        private final String etag;
+
+        private Representation(final Coding coding, final byte[] content, final String etag, final boolean direct) {
+            final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(content.length) : ByteBuffer.allocate(content.length);
+            buffer.put(content);
+            buffer.flip();
+
+            this.coding = coding;
+            this.content = buffer.asReadOnlyBuffer();
+            this.etag = etag;
+        }
+
+        /**
+         * Gets content coding of representation.
+         *
+         * @return coding
+         */
+        public Coding coding() {
+            return coding;
+        }
+
+        /**
+         * Gets size of representation.
+         *
+         * @return size in bytes
+         */
+        public int size() {
+            return content.remaining();
+        }
+
+        /**
+         * Gets strong ETag of representation.
+         *
+         * @return quoted hash of content, with coding if it is compressed
+         */
+        public String etag() {
+            return etag;
+        }
+
+        /**
+         * Wraps representation to buffer, the content is not copied.
+         *
+         * @param bufferFactory of response
+         * @return buffer with representation
+         */
+        public DataBuffer asDataBuffer(final DataBufferFactory bufferFactory) {
+            return bufferFactory.wrap(content.duplicate());
+        }
+    }
+}
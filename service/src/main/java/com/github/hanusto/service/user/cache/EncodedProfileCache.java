@@ -0,0 +1,107 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.unit.DataSize;
+
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Cache of {@link User}s encoded to JSON, so cached profiles are serialized only once.
+ * <p>
+ * Encoded profiles are weakly keyed by identity of {@link User} instance. Instances held by
+ * {@link CachingUserDataProvider} are reused across requests, so their encoded form is reused too, and it is
+ * dropped as soon as the instance is evicted or replaced by refresh.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class EncodedProfileCache {
+
+    private final ObjectMapper objectMapper;
+    private final boolean direct;
+    private final long compressionMinSize;
+    private final Cache<User, EncodedProfile> cache;
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param objectMapper to encode profiles
+     * @param config       of cache
+     */
+    public EncodedProfileCache(final ObjectMapper objectMapper, final Config config) {
+        LOG.debug("Configuration of encoded profiles cache: {}", config);
+
+        this.objectMapper = objectMapper;
+        this.direct = config.isDirect();
+        this.compressionMinSize = config.isCompression() ? config.getCompressionMinSize().toBytes() : -1;
+        this.cache = Caffeine.newBuilder()
+                             .weakKeys()
+                             .maximumSize(config.getMaximumSize())
+                             .build();
+    }
+
+    /**
+     * Gets encoded profile of user, it is encoded if it is not cached yet.
+     *
+     * @param user to encode
+     * @return encoded profile
+     */
+    public EncodedProfile get(final User user) {
+        return cache.get(user, this::encode);
+    }
+
+    private EncodedProfile encode(final User user) {
+        try {
+            return new EncodedProfile(objectMapper.writeValueAsBytes(user), direct, compressionMinSize);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Profile cannot be encoded", e);
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether encoded profiles are held off-heap.
+         */
+        private boolean direct = false;
+        /**
+         * Maximum count of encoded profiles.
+         */
+        private long maximumSize = 10_000;
+        /**
+         * Whether encoded profiles are compressed for clients that accept it, compressed form is kept with the profile.
+         */
+        private boolean compression = true;
+        /**
+         * Minimum size of encoded profile that is compressed, compression of smaller ones does not pay off.
+         */
+        @NonNull
+        private DataSize compressionMinSize = DataSize.ofKilobytes(1);
+    }
+}
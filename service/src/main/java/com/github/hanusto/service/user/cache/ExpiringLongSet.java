@@ -0,0 +1,129 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded set of primitive {@code long} values that expire after time-to-live.
+ * <p>
+ * It is 2-way set associative table, so it is compact and never grows. When both slots of a value are occupied
+ * by live values, the one that expires sooner is replaced. Set is thread-safe, slots are guarded by striped locks.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+final class ExpiringLongSet {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final long[] values;
+    /**
+     * Expiration of values in {@link #clock} time, {@code 0} marks empty slot.
+     */
+    private final long[] expirations;
+    private final Object[] locks;
+    private final int mask;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    /**
+     * New instance.
+     *
+     * @param maximumSize of set, capacity is rounded up to power of two
+     * @param ttlNanos    time-to-live of values in nanoseconds
+     * @param clock       as time source in nanoseconds
+     */
+    ExpiringLongSet(final int maximumSize, final long ttlNanos, final LongSupplier clock) {
+        Assert.isTrue(maximumSize > 1, "Maximum size must be greater than 1");
+        Assert.isTrue(ttlNanos > 0, "TTL must be positive");
+
+        final int capacity = Integer.highestOneBit(maximumSize - 1) << 1;
+        this.values = new long[capacity];
+        this.expirations = new long[capacity];
+        this.mask = capacity - 2;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds value to set or prolongs its time-to-live.
+     *
+     * @param value to add
+     */
+    void add(final long value) {
+        final int slot = slot(value);
+        final long now = clock.getAsLong();
+        // never store 0 as it marks empty slot
+        final long expiration = (now + ttlNanos) | 1;
+
+        synchronized (lock(slot)) {
+            final int target;
+            if (values[slot + 1] == value && isLive(slot + 1, now)) {
+                target = slot + 1;
+            } else if (values[slot] == value || !isLive(slot, now)) {
+                target = slot;
+            } else if (!isLive(slot + 1, now)) {
+                target = slot + 1;
+            } else {
+                // both slots are taken, replace the one that expires sooner
+                target = expirations[slot + 1] - expirations[slot] < 0 ? slot + 1 : slot;
+            }
+            values[target] = value;
+            expirations[target] = expiration;
+        }
+    }
+
+    /**
+     * Checks whether set contains live value.
+     *
+     * @param value to check
+     * @return {@code true} if value is present and has not expired
+     */
+    boolean contains(final long value) {
+        final int slot = slot(value);
+        final long now = clock.getAsLong();
+
+        synchronized (lock(slot)) {
+            return (values[slot] == value && isLive(slot, now))
+                    || (values[slot + 1] == value && isLive(slot + 1, now));
+        }
+    }
+
+    private boolean isLive(final int slot, final long now) {
+        return expirations[slot] != 0 && expirations[slot] - now > 0;
+    }
+
+    private Object lock(final int slot) {
+        return locks[(slot >>> 1) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Gets first of two slots for value.
+     */
+    private int slot(final long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash & mask;
+    }
+}
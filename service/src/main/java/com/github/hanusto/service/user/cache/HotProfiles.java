@@ -0,0 +1,268 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+
+/**
+ * The most requested users, they are warmed up on startup of service.
+ * <p>
+ * Requested IDs are counted by {@link SpaceSavingSketch} of {@link Config#getCapacity()} IDs. Only 1 of
+ * {@link Config#getSampleRate()} requests is recorded, with weight of the sample rate, so requests on event loop
+ * rarely contend on the sketch, while estimated counts are kept in scale. The sketch is written
+ * to file every {@link Config#getWriteInterval()} and on shutdown as {@code [magic, size, (id, count)*]}, then its
+ * counts are halved, so users that are no longer requested fade out. The file is replaced atomically.
+ * </p>
+ * <p>
+ * On startup the sketch is restored from the file and its users are loaded through {@link UserDataProvider}
+ * in background, the most requested first, with bounded concurrency, so they are cached by all enabled tiers before
+ * the service reports it is ready, see {@link #isWarmedUp()}. Warm-up that exceeds {@link Config#getWarmUpTimeout()}
+ * is cancelled, so slow upstream does not hold the service out of service.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class HotProfiles implements Closeable {
+
+    private static final int MAGIC = 0x484f5431;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final SpaceSavingSketch sketch;
+    private final int sampleRate;
+    private final int warmUpTotal;
+    private final AtomicInteger warmUpCompleted = new AtomicInteger();
+    private final Disposable warmUp;
+    private final Disposable write;
+
+    private volatile boolean warmedUp;
+
+    /**
+     * Initialization with configuration, saved sketch is restored and warm-up of its users is started.
+     *
+     * @param userDataProvider to load users on warm-up
+     * @param config           of hot profiles
+     */
+    public HotProfiles(final UserDataProvider userDataProvider, final Config config) {
+        Assert.isTrue(config.getCapacity() > 0, "Capacity must be positive");
+        Assert.isTrue(config.getSampleRate() > 0, "Sample rate must be positive");
+        Assert.isTrue(config.getWarmUpConcurrency() > 0, "Warm-up concurrency must be positive");
+        Assert.isTrue(!config.getWriteInterval().isNegative() && !config.getWriteInterval().isZero(), "Write interval must be positive");
+
+        LOG.debug("Configuration of hot profiles: {}", config);
+
+        this.path = Paths.get(config.getPath()).toAbsolutePath();
+        this.temporaryPath = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        this.sketch = new SpaceSavingSketch(config.getCapacity());
+        this.sampleRate = config.getSampleRate();
+
+        final List<SpaceSavingSketch.Entry> saved = read(path);
+        for (SpaceSavingSketch.Entry entry : saved) {
+            sketch.record(entry.getId(), entry.getCount());
+        }
+        // restored sketch may be larger than the current capacity, only monitored users are warmed up
+        final List<SpaceSavingSketch.Entry> hottest = sketch.top();
+        this.warmUpTotal = hottest.size();
+
+        LOG.info("Warming up {} hot users from {}", warmUpTotal, path);
+
+        this.warmUp = Flux.fromIterable(hottest)
+                          .flatMap(entry -> userDataProvider.getById(entry.getId())
+                                                            .then()
+                                                            .onErrorResume(e -> {
+                                                                LOG.debug("Warm-up of user {} failed: {}", entry.getId(), e.getMessage());
+                                                                return Mono.empty();
+                                                            })
+                                                            .doOnTerminate(warmUpCompleted::incrementAndGet),
+                                  config.getWarmUpConcurrency())
+                          .then()
+                          .timeout(config.getWarmUpTimeout(), Mono.fromRunnable(
+                                  () -> LOG.warn("Warm-up of hot users timed out after {}", config.getWarmUpTimeout())))
+                          .doFinally(signal -> {
+                              warmedUp = true;
+                              LOG.info("Warm-up of hot users finished: {} of {}", warmUpCompleted.get(), warmUpTotal);
+                          })
+                          .subscribe();
+
+        // writes are blocking I/O
+        this.write = Flux.interval(config.getWriteInterval(), config.getWriteInterval(), Schedulers.elastic())
+                         .onBackpressureDrop()
+                         .subscribe(tick -> write());
+    }
+
+    /**
+     * Records request of user, if it is sampled.
+     *
+     * @param id of user
+     */
+    public void record(final long id) {
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            sketch.record(id, sampleRate);
+        }
+    }
+
+    /**
+     * Whether warm-up on startup has finished, either completely or by timeout.
+     *
+     * @return {@code true} if it has finished
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * Gets count of users to warm up on startup.
+     *
+     * @return count of users
+     */
+    public int getWarmUpTotal() {
+        return warmUpTotal;
+    }
+
+    /**
+     * Gets count of users that were warmed up on startup, including missing and failed ones.
+     *
+     * @return count of users
+     */
+    public int getWarmUpCompleted() {
+        return warmUpCompleted.get();
+    }
+
+    /**
+     * Stops warm-up and periodic writes, the sketch is written for the next startup.
+     */
+    @Override
+    public void close() {
+        warmUp.dispose();
+        write.dispose();
+        write();
+    }
+
+    /**
+     * Writes the sketch to file and halves its counts, failure is logged and the previous file is kept.
+     */
+    synchronized void write() {
+        final List<SpaceSavingSketch.Entry> entries = sketch.top();
+        try {
+            Files.createDirectories(path.getParent());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(entries.size());
+                for (SpaceSavingSketch.Entry entry : entries) {
+                    output.writeLong(entry.getId());
+                    output.writeLong(entry.getCount());
+                }
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            LOG.debug("Written {} hot users to {}", entries.size(), path);
+        } catch (IOException e) {
+            LOG.warn("Hot users cannot be written to {}: {}", path, e.getMessage());
+        }
+        sketch.decay();
+    }
+
+    /**
+     * Reads saved sketch, missing or corrupted file is ignored.
+     */
+    private static List<SpaceSavingSketch.Entry> read(final Path path) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                LOG.warn("Hot users are not restored, file has unknown format: {}", path);
+                return Collections.emptyList();
+            }
+            final int size = input.readInt();
+            final List<SpaceSavingSketch.Entry> entries = new ArrayList<>(Math.max(0, Math.min(size, 1 << 16)));
+            for (int i = 0; i < size; i++) {
+                entries.add(new SpaceSavingSketch.Entry(input.readLong(), input.readLong()));
+            }
+            return entries;
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            LOG.warn("Hot users cannot be restored from {}: {}", path, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether hot users are recorded and warmed up on startup.
+         */
+        private boolean enabled = false;
+        /**
+         * File of hot users.
+         */
+        @NonNull
+        private String path = "cache/hot-profiles.bin";
+        /**
+         * Count of the most requested users that are recorded.
+         */
+        private int capacity = 1000;
+        /**
+         * Only 1 of this count of requests is recorded, {@code 1} records every request.
+         */
+        private int sampleRate = 16;
+        /**
+         * Interval of writes of hot users to file.
+         */
+        @NonNull
+        private Duration writeInterval = Duration.ofMinutes(1);
+        /**
+         * Maximum count of users loaded concurrently by warm-up.
+         */
+        private int warmUpConcurrency = 16;
+        /**
+         * Maximum time of warm-up, the service reports it is ready after it.
+         */
+        @NonNull
+        private Duration warmUpTimeout = Duration.ofSeconds(60);
+    }
+}
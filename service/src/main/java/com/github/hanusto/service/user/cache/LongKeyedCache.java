@@ -0,0 +1,236 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache keyed by primitive {@code long}, so lookups neither box the key nor allocate.
+ * <p>
+ * It is 8-way set associative table: every key has a bucket of 8 slots that are probed linearly, so table never grows
+ * and never rehashes. Full bucket evicts by clock algorithm: its hand sweeps the slots and evicts the first entry that
+ * was not read since the hand passed it last time, entries that were read get second chance. Every entry expires
+ * after its own time-to-live. Cache is thread-safe, buckets are guarded by striped locks.
+ * </p>
+ *
+ * @param <V> type of values
+ * @author Tomas Hanus
+ */
+final class LongKeyedCache<V> {
+
+    private static final int WAYS = 8;
+    private static final int LOCK_STRIPES = 64;
+
+    private final long[] keys;
+    /**
+     * Values of entries, {@code null} marks empty slot.
+     */
+    private final Object[] values;
+    /**
+     * Expiration of entries in {@link #clock} time.
+     */
+    private final long[] expirations;
+    private final boolean[] referenced;
+    /**
+     * Clock hand of every bucket, offset of slot in bucket to be inspected next.
+     */
+    private final byte[] hands;
+    private final Object[] locks;
+    private final int bucketMask;
+    private final LongSupplier clock;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * New instance.
+     *
+     * @param maximumSize of cache, capacity is rounded down to power of two
+     * @param clock       as time source in nanoseconds
+     */
+    LongKeyedCache(final int maximumSize, final LongSupplier clock) {
+        Assert.isTrue(maximumSize >= WAYS, "Maximum size must not be less than " + WAYS);
+
+        final int buckets = Integer.highestOneBit(maximumSize / WAYS);
+        this.keys = new long[buckets * WAYS];
+        this.values = new Object[buckets * WAYS];
+        this.expirations = new long[buckets * WAYS];
+        this.referenced = new boolean[buckets * WAYS];
+        this.hands = new byte[buckets];
+        this.bucketMask = buckets - 1;
+        this.clock = clock;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Gets live value of key.
+     *
+     * @param key of entry
+     * @return value, {@code null} if it is not cached or it has expired
+     */
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        final int bucket = bucket(key);
+        final long now = clock.getAsLong();
+
+        synchronized (lock(bucket)) {
+            final int slot = find(bucket, key);
+            if (slot < 0) {
+                return null;
+            }
+            if (!isLive(slot, now)) {
+                clear(slot);
+                return null;
+            }
+
+            referenced[slot] = true;
+            return (V) values[slot];
+        }
+    }
+
+    /**
+     * Puts value of key, it replaces the previous one.
+     *
+     * @param key      of entry
+     * @param value    to cache
+     * @param ttlNanos time-to-live of entry in nanoseconds
+     */
+    void put(final long key, final V value, final long ttlNanos) {
+        Assert.notNull(value, "Value must not be null");
+
+        final int bucket = bucket(key);
+        final long now = clock.getAsLong();
+
+        synchronized (lock(bucket)) {
+            int slot = find(bucket, key);
+            if (slot < 0) {
+                slot = vacate(bucket, now);
+            }
+
+            if (values[slot] == null) {
+                size.incrementAndGet();
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            expirations[slot] = now + ttlNanos;
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * Removes entry of key.
+     *
+     * @param key of entry
+     */
+    void remove(final long key) {
+        final int bucket = bucket(key);
+
+        synchronized (lock(bucket)) {
+            final int slot = find(bucket, key);
+            if (slot >= 0) {
+                clear(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        for (int bucket = 0; bucket <= bucketMask; bucket++) {
+            synchronized (lock(bucket)) {
+                for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+                    if (values[slot] != null) {
+                        clear(slot);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets count of entries, including expired ones that were not removed yet.
+     *
+     * @return count of entries
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Gets capacity of cache.
+     *
+     * @return maximum count of entries
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    private int find(final int bucket, final long key) {
+        for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+            if (values[slot] != null && keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets empty or expired slot of bucket, or evicts entry by clock algorithm if there is none.
+     */
+    private int vacate(final int bucket, final long now) {
+        final int base = bucket * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (values[slot] == null || !isLive(slot, now)) {
+                return slot;
+            }
+        }
+
+        // every entry is passed at most twice, after the first pass none of them is referenced
+        int hand = hands[bucket];
+        while (referenced[base + hand]) {
+            referenced[base + hand] = false;
+            hand = (hand + 1) & (WAYS - 1);
+        }
+        hands[bucket] = (byte) ((hand + 1) & (WAYS - 1));
+        return base + hand;
+    }
+
+    private boolean isLive(final int slot, final long now) {
+        return expirations[slot] - now > 0;
+    }
+
+    private void clear(final int slot) {
+        values[slot] = null;
+        referenced[slot] = false;
+        size.decrementAndGet();
+    }
+
+    private Object lock(final int bucket) {
+        return locks[bucket & (LOCK_STRIPES - 1)];
+    }
+
+    private int bucket(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash & bucketMask;
+    }
+}
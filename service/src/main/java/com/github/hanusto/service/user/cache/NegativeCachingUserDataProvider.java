@@ -0,0 +1,237 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Decorator of {@link UserDataProvider} that remembers IDs of users that were not found.
+ * <p>
+ * Lookups of known missing IDs fail with {@link NotFoundException} without calling delegate, until the ID expires
+ * after {@link Config#getTtl()}. IDs are held in compact primitive set, see {@link ExpiringLongSet}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class NegativeCachingUserDataProvider implements UserDataProvider {
+
+    static final String METRIC_NAME = "user.profiles.cache.negative";
+
+    private final UserDataProvider delegate;
+    private final ExpiringLongSet missingIds;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter puts;
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param delegate      to load users
+     * @param config        of negative cache
+     * @param meterRegistry to register metrics
+     */
+    public NegativeCachingUserDataProvider(final UserDataProvider delegate, final Config config, final MeterRegistry meterRegistry) {
+        this(delegate, config, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * Initialization with custom time source.
+     *
+     * @param delegate      to load users
+     * @param config        of negative cache
+     * @param meterRegistry to register metrics
+     * @param clock         as time source in nanoseconds
+     */
+    NegativeCachingUserDataProvider(final UserDataProvider delegate, final Config config, final MeterRegistry meterRegistry,
+                                    final LongSupplier clock) {
+        LOG.debug("Configuration of negative cache: {}", config);
+
+        this.delegate = delegate;
+        this.missingIds = new ExpiringLongSet(config.getMaximumSize(), config.getTtl().toNanos(), clock);
+        this.hits = counter(meterRegistry, "hit", "Lookups of known missing users");
+        this.misses = counter(meterRegistry, "miss", "Lookups passed to upstream");
+        this.puts = counter(meterRegistry, "put", "Users remembered as missing");
+    }
+
+    @Override
+    public Mono<User> getById(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return getById(id.longValue());
+    }
+
+    @Override
+    public Mono<User> getById(final long id) {
+        return Mono.defer(() -> {
+            if (missingIds.contains(id)) {
+                hits.increment();
+                return Mono.error(new NotFoundException("User not found"));
+            }
+
+            misses.increment();
+            return delegate.getById(id)
+                           .doOnError(NotFoundException.class, e -> remember(id));
+        });
+    }
+
+    @Override
+    public Mono<User> getById(final long id, final Projection projection) {
+        Assert.notNull(projection, "Projection must not be null");
+
+        return Mono.defer(() -> {
+            if (missingIds.contains(id)) {
+                hits.increment();
+                return Mono.error(new NotFoundException("User not found"));
+            }
+
+            misses.increment();
+            return delegate.getById(id, projection)
+                           .doOnError(NotFoundException.class, e -> remember(id));
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Known missing IDs are skipped, requested IDs that delegate does not return are remembered as missing.
+     * </p>
+     */
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.defer(() -> {
+            final Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+            final List<Long> unknownIds = uniqueIds.stream()
+                                                   .filter(id -> !missingIds.contains(id))
+                                                   .collect(Collectors.toList());
+            hits.increment(uniqueIds.size() - unknownIds.size());
+            if (unknownIds.isEmpty()) {
+                return Flux.empty();
+            }
+            misses.increment(unknownIds.size());
+
+            final Set<Long> foundIds = ConcurrentHashMap.newKeySet();
+            return delegate.getByIds(unknownIds)
+                           .doOnNext(user -> foundIds.add(user.getId()))
+                           .doOnComplete(() -> unknownIds.stream()
+                                                         .filter(id -> !foundIds.contains(id))
+                                                         .forEach(this::remember));
+        });
+    }
+
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return Flux.defer(() -> {
+            if (missingIds.contains(id)) {
+                hits.increment();
+                return Flux.error(new NotFoundException("User not found"));
+            }
+
+            misses.increment();
+            return delegate.getPosts(id);
+        });
+    }
+
+    @Override
+    public Flux<Post> getPosts(final long id, final long offset, final int limit) {
+        return Flux.defer(() -> {
+            if (missingIds.contains(id)) {
+                hits.increment();
+                return Flux.error(new NotFoundException("User not found"));
+            }
+
+            misses.increment();
+            return delegate.getPosts(id, offset, limit);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Remembered missing IDs are kept, they expire by their TTL.
+     * </p>
+     */
+    @Override
+    public void invalidate(final long id) {
+        delegate.invalidate(id);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    private void remember(final long id) {
+        LOG.trace("User remembered as missing: {}", id);
+
+        missingIds.add(id);
+        puts.increment();
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String result, final String description) {
+        return Counter.builder(METRIC_NAME)
+                      .tag("result", result)
+                      .description(description)
+                      .register(meterRegistry);
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether missing users are remembered.
+         */
+        private boolean enabled = true;
+        /**
+         * Maximum count of remembered IDs.
+         */
+        private int maximumSize = 100_000;
+        /**
+         * Time for that ID is remembered as missing.
+         */
+        @NonNull
+        private Duration ttl = Duration.ofSeconds(60);
+    }
+}
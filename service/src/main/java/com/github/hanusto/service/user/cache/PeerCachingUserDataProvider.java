@@ -0,0 +1,287 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Decorator of {@link UserDataProvider} that shares cached users across instances of service.
+ * <p>
+ * Every ID is owned by one of {@link Config#getPeers()}, assigned by {@link ConsistentHashRing}. Users owned by this
+ * instance are loaded by delegate, users owned by other peer are fetched from its {@value #PEER_PATH} route, which
+ * serves them from its own caches. So every user is loaded from upstream by its owner only. When owner fails or does not
+ * answer in {@link Config#getTimeout()}, user is loaded by delegate instead. All peers must be configured with the same
+ * list of peers, otherwise they would not agree on owners. Peer serves requests of peers by its local tiers only,
+ * see {@link #getLocal()}, so peers that do not agree on owner do not forward requests to each other.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class PeerCachingUserDataProvider implements UserDataProvider {
+
+    /**
+     * Path of route that serves users to peers.
+     */
+    public static final String PEER_PATH = "/peer/profiles";
+
+    static final String METRIC_NAME = "user.profiles.cache.peer";
+
+    private final UserDataProvider delegate;
+    private final String self;
+    private final ConsistentHashRing ring;
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final Counter owned;
+    private final Counter hits;
+    private final Counter failures;
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param delegate      to load users owned by this instance
+     * @param config        of peers
+     * @param meterRegistry to register metrics
+     */
+    public PeerCachingUserDataProvider(final UserDataProvider delegate, final Config config, final MeterRegistry meterRegistry) {
+        final List<String> peers = config.getPeers().stream()
+                                         .map(PeerCachingUserDataProvider::normalize)
+                                         .collect(Collectors.toList());
+        final String self = normalize(config.getSelf());
+
+        Assert.isTrue(peers.contains(self), "Peers must contain this instance: " + self);
+
+        LOG.debug("Configuration of peer cache: {}", config);
+
+        this.delegate = delegate;
+        this.self = self;
+        this.ring = new ConsistentHashRing(peers, config.getVirtualNodes());
+        this.webClient = WebClient.create();
+        this.timeout = config.getTimeout();
+        this.owned = counter(meterRegistry, "owned", "Lookups of users owned by this instance");
+        this.hits = counter(meterRegistry, "hit", "Lookups served by owning peer");
+        this.failures = counter(meterRegistry, "failure", "Lookups loaded by this instance as owning peer failed");
+    }
+
+    @Override
+    public Mono<User> getById(final Long id) {
+        Assert.notNull(id, "ID must not be null");
+
+        return getById(id.longValue());
+    }
+
+    @Override
+    public Mono<User> getById(final long id) {
+        return Mono.defer(() -> {
+            final String owner = ring.owner(id);
+            if (self.equals(owner)) {
+                owned.increment();
+                return delegate.getById(id);
+            }
+
+            return webClient.get()
+                            .uri(owner + PEER_PATH + "/{id}", id)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .exchange()
+                            .flatMap(response -> {
+                                if (response.statusCode() == HttpStatus.NOT_FOUND) {
+                                    return response.bodyToMono(Void.class).then(Mono.error(new NotFoundException("User not found")));
+                                }
+                                return response.statusCode().isError()
+                                        ? failed(owner, response)
+                                        : response.bodyToMono(User.class);
+                            })
+                            .timeout(timeout)
+                            .doOnNext(user -> hits.increment())
+                            .onErrorResume(e -> !(e instanceof NotFoundException), e -> {
+                                LOG.debug("Peer {} failed to serve user {}: {}", owner, id, e.toString());
+                                failures.increment();
+                                return delegate.getById(id);
+                            });
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Projection with posts is looked up as complete user, projection without posts is loaded by delegate.
+     * </p>
+     */
+    @Override
+    public Mono<User> getById(final long id, final Projection projection) {
+        Assert.notNull(projection, "Projection must not be null");
+
+        return projection.includesPosts() ? getById(id) : delegate.getById(id, projection);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IDs are grouped by owner, every peer is asked for its users by one request.
+     * </p>
+     */
+    @Override
+    public Flux<User> getByIds(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        return Flux.defer(() -> {
+            final Map<String, List<Long>> idsByOwner = new LinkedHashMap<>();
+            for (Long id : new LinkedHashSet<>(ids)) {
+                idsByOwner.computeIfAbsent(ring.owner(id), owner -> new ArrayList<>()).add(id);
+            }
+
+            return Flux.fromIterable(idsByOwner.entrySet())
+                       .flatMap(entry -> self.equals(entry.getKey())
+                               ? delegate.getByIds(entry.getValue())
+                               : getByIds(entry.getKey(), entry.getValue()));
+        });
+    }
+
+    /**
+     * Gets users from owning peer, all of them are loaded by delegate if the peer fails.
+     */
+    private Flux<User> getByIds(final String owner, final List<Long> ids) {
+        return webClient.get()
+                        .uri(owner + PEER_PATH + "?id={ids}", StringUtils.collectionToCommaDelimitedString(ids))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .exchange()
+                        .flatMap(response -> response.statusCode().isError()
+                                ? PeerCachingUserDataProvider.<List<User>>failed(owner, response)
+                                : response.bodyToFlux(User.class).collectList())
+                        .timeout(timeout)
+                        .doOnNext(users -> hits.increment(users.size()))
+                        // users are emitted only after all of them are received, so none is emitted twice on failure
+                        .flatMapIterable(users -> users)
+                        .onErrorResume(e -> {
+                            LOG.debug("Peer {} failed to serve users {}: {}", owner, ids, e.toString());
+                            failures.increment(ids.size());
+                            return delegate.getByIds(ids);
+                        });
+    }
+
+    /**
+     * Gets local tiers below this decorator. Requests of peers must be served by them, so request is never forwarded
+     * to another peer, even if peers do not agree on owner.
+     *
+     * @return provider that loads users on this instance
+     */
+    public UserDataProvider getLocal() {
+        return delegate;
+    }
+
+    @Override
+    public Flux<Post> getPosts(final Long id) {
+        return delegate.getPosts(id);
+    }
+
+    @Override
+    public Flux<Post> getPosts(final long id, final long offset, final int limit) {
+        return delegate.getPosts(id, offset, limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only local tiers are invalidated, users cached by other peers are kept.
+     * </p>
+     */
+    @Override
+    public void invalidate(final long id) {
+        delegate.invalidate(id);
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+    }
+
+    private static <T> Mono<T> failed(final String owner, final ClientResponse response) {
+        // body must be consumed, so connection is released back to pool
+        return response.bodyToMono(Void.class)
+                       .then(Mono.error(new IllegalStateException("Peer " + owner + " responded " + response.statusCode())));
+    }
+
+    private static String normalize(final String peer) {
+        return StringUtils.trimTrailingCharacter(peer.trim(), '/');
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String result, final String description) {
+        return Counter.builder(METRIC_NAME)
+                      .tag("result", result)
+                      .description(description)
+                      .register(meterRegistry);
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether users are shared by peers.
+         */
+        private boolean enabled = false;
+        /**
+         * Base URL of this instance, as it is listed in {@link #peers}.
+         */
+        @NonNull
+        private String self = "http://localhost:8080";
+        /**
+         * Base URLs of all instances, including this one.
+         */
+        @NonNull
+        private List<String> peers = Collections.singletonList("http://localhost:8080");
+        /**
+         * Count of points of every peer on ring of consistent hashing, more points spread users more evenly.
+         */
+        private int virtualNodes = 128;
+        /**
+         * Maximum time to wait for owning peer, then user is loaded by this instance.
+         */
+        @NonNull
+        private Duration timeout = Duration.ofMillis(500);
+    }
+}
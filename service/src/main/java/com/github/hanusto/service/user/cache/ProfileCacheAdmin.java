@@ -0,0 +1,275 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Data;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Administration of caches of profiles: statistics, invalidation and warm-up.
+ * <p>
+ * Users are invalidated by {@link UserDataProvider#invalidate(long)}, so every enabled tier forgets them: cache
+ * in memory ({@link CachingUserDataProvider}), cache on disk ({@link DiskProfileCache}) and validators of conditional
+ * requests of upstream. Missing users remembered by {@link NegativeCachingUserDataProvider} are not invalidated,
+ * they expire by its TTL.
+ * </p>
+ * <p>
+ * Warm-up loads users through {@link UserDataProvider} in background with bounded concurrency, so they are cached
+ * by all enabled tiers. Only one warm-up runs at a time, its progress is available until the next one starts.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class ProfileCacheAdmin {
+
+    private final UserDataProvider userDataProvider;
+    private final CachingUserDataProvider cache;
+    private final DiskProfileCache diskCache;
+    private final int warmUpConcurrency;
+    private final int maxWarmUpSize;
+    private final AtomicReference<WarmUp> warmUp = new AtomicReference<>();
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param userDataProvider to load users on warm-up and to invalidate them
+     * @param cache            of profiles in memory for statistics, {@code null} if it is disabled
+     * @param diskCache        of profiles on disk for statistics, {@code null} if it is disabled
+     * @param config           of administration
+     */
+    public ProfileCacheAdmin(final UserDataProvider userDataProvider, final CachingUserDataProvider cache,
+                             final DiskProfileCache diskCache, final Config config) {
+        Assert.isTrue(config.getWarmUpConcurrency() > 0, "Warm-up concurrency must be positive");
+
+        LOG.debug("Configuration of cache administration: {}", config);
+
+        this.userDataProvider = userDataProvider;
+        this.cache = cache;
+        this.diskCache = diskCache;
+        this.warmUpConcurrency = config.getWarmUpConcurrency();
+        this.maxWarmUpSize = config.getMaxWarmUpSize();
+    }
+
+    /**
+     * Gets statistics of caches, values of disabled tiers are zero.
+     *
+     * @return statistics
+     */
+    public Stats stats() {
+        final CacheStats stats = cache == null ? CacheStats.empty() : cache.stats();
+
+        return new Stats(
+                cache == null ? 0 : cache.size(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                stats.loadSuccessCount(),
+                stats.loadFailureCount(),
+                TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()),
+                diskCache == null ? 0 : diskCache.size(),
+                diskCache == null ? 0 : diskCache.usedBytes());
+    }
+
+    /**
+     * Invalidates cached users.
+     *
+     * @param ids of users
+     */
+    public void invalidate(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        LOG.info("Invalidating cached users: {}", ids);
+
+        for (Long id : ids) {
+            userDataProvider.invalidate(id);
+        }
+    }
+
+    /**
+     * Invalidates all cached users.
+     */
+    public void invalidateAll() {
+        LOG.info("Invalidating all cached users");
+
+        userDataProvider.invalidateAll();
+    }
+
+    /**
+     * Starts warm-up of users in background, unless another warm-up is still running.
+     *
+     * @param ids of users, duplicates are loaded once
+     * @return progress of started warm-up, empty if another warm-up is still running
+     */
+    public Optional<WarmUp> warmUp(final Collection<Long> ids) {
+        Assert.notNull(ids, "IDs must not be null");
+
+        final Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        Assert.isTrue(uniqueIds.size() <= maxWarmUpSize, "At most " + maxWarmUpSize + " users can be warmed up at once");
+
+        final WarmUp current = warmUp.get();
+        final WarmUp next = new WarmUp(uniqueIds.size());
+        if ((current != null && !current.isDone()) || !warmUp.compareAndSet(current, next)) {
+            return Optional.empty();
+        }
+
+        LOG.info("Warming up {} users", next.getTotal());
+
+        Flux.fromIterable(uniqueIds)
+            .flatMap(id -> userDataProvider.getById(id.longValue())
+                                           .hasElement()
+                                           .doOnNext(next::completed)
+                                           .onErrorResume(e -> {
+                                               next.failed(e);
+                                               return Mono.empty();
+                                           }), warmUpConcurrency)
+            .doFinally(signal -> {
+                next.done = true;
+                LOG.info("Warm-up finished: {}", next);
+            })
+            .subscribe();
+
+        return Optional.of(next);
+    }
+
+    /**
+     * Gets progress of the last warm-up.
+     *
+     * @return progress, empty if no warm-up was started
+     */
+    public Optional<WarmUp> getWarmUp() {
+        return Optional.ofNullable(warmUp.get());
+    }
+
+    /**
+     * Statistics of caches.
+     */
+    @Value
+    public static class Stats {
+        /**
+         * Estimated count of users cached in memory.
+         */
+        long size;
+        long hitCount;
+        long missCount;
+        double hitRatio;
+        long evictionCount;
+        long loadSuccessCount;
+        long loadFailureCount;
+        /**
+         * Average time of loading user from lower tiers.
+         */
+        long averageLoadMillis;
+        /**
+         * Count of profiles cached on disk.
+         */
+        int diskSize;
+        int diskUsedBytes;
+    }
+
+    /**
+     * Progress of warm-up.
+     */
+    public static final class WarmUp {
+
+        private final int total;
+        private final AtomicInteger loaded = new AtomicInteger();
+        private final AtomicInteger missing = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile boolean done;
+
+        private WarmUp(final int total) {
+            this.total = total;
+        }
+
+        private void completed(final boolean found) {
+            (found ? loaded : missing).incrementAndGet();
+        }
+
+        private void failed(final Throwable e) {
+            if (e instanceof NotFoundException) {
+                missing.incrementAndGet();
+            } else {
+                LOG.debug("Warm-up of user failed: {}", e.getMessage());
+                failed.incrementAndGet();
+            }
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getLoaded() {
+            return loaded.get();
+        }
+
+        public int getMissing() {
+            return missing.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmUp(total=" + total + ", loaded=" + loaded + ", missing=" + missing + ", failed=" + failed
+                    + ", done=" + done + ")";
+        }
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether administration routes are exposed.
+         */
+        private boolean enabled = false;
+        /**
+         * Maximum count of users loaded concurrently by warm-up.
+         */
+        private int warmUpConcurrency = 16;
+        /**
+         * Maximum count of users in one warm-up.
+         */
+        private int maxWarmUpSize = 100_000;
+    }
+}
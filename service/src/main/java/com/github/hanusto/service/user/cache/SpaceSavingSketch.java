@@ -0,0 +1,213 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import lombok.Value;
+import org.springframework.util.Assert;
+
+/**
+ * Space-Saving sketch of the most frequent user IDs, it monitors at most {@code capacity} IDs in constant memory.
+ * <p>
+ * Monitored ID counts its occurrences. Unmonitored ID replaces the monitored ID with the lowest count and inherits
+ * its count, so counts are overestimated by at most that inherited count, every ID more frequent than
+ * {@code 1 / capacity} of the stream is guaranteed to be monitored. Counters are kept in min-heap indexed by ID,
+ * so every update is {@code O(log capacity)}. Positions of IDs in the heap are held in open addressing table keyed
+ * by primitive ID, so updates neither box the ID nor allocate. Updates are serialized.
+ * </p>
+ *
+ * @author Tomas Hanus
+ * @see HotProfiles
+ */
+final class SpaceSavingSketch {
+
+    private final int capacity;
+    /**
+     * Min-heap of counters by count, the same index in all arrays.
+     */
+    private final long[] ids;
+    private final long[] counts;
+    /**
+     * Open addressing table of heap positions by ID with linear probing, position is stored incremented by one,
+     * so {@code 0} marks empty slot.
+     */
+    private final long[] slotIds;
+    private final int[] slotPositions;
+    private final int slotMask;
+    private int size;
+
+    /**
+     * Initialization with count of monitored IDs.
+     *
+     * @param capacity maximum count of monitored IDs
+     */
+    SpaceSavingSketch(final int capacity) {
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+
+        this.capacity = capacity;
+        this.ids = new long[capacity];
+        this.counts = new long[capacity];
+        // load factor is at most 1/2, so probe sequences stay short
+        final int slots = Integer.highestOneBit(capacity) << 2;
+        this.slotIds = new long[slots];
+        this.slotPositions = new int[slots];
+        this.slotMask = slots - 1;
+    }
+
+    /**
+     * Records occurrences of ID.
+     *
+     * @param id     of user
+     * @param weight count of occurrences
+     */
+    synchronized void record(final long id, final long weight) {
+        final int slot = slot(id);
+        if (slotPositions[slot] != 0) {
+            final int position = slotPositions[slot] - 1;
+            counts[position] += weight;
+            siftDown(position);
+        } else if (size < capacity) {
+            ids[size] = id;
+            counts[size] = weight;
+            slotIds[slot] = id;
+            slotPositions[slot] = size + 1;
+            siftUp(size++);
+        } else {
+            // the least frequent ID is replaced, its count bounds count of the new ID seen before
+            removeSlot(slot(ids[0]));
+            ids[0] = id;
+            counts[0] += weight;
+            // removal may shift the slot of the new ID
+            final int vacant = slot(id);
+            slotIds[vacant] = id;
+            slotPositions[vacant] = 1;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Halves all counts, so IDs that are no longer requested are replaced by the new ones. Order of counters is kept.
+     */
+    synchronized void decay() {
+        for (int i = 0; i < size; i++) {
+            counts[i] >>>= 1;
+        }
+    }
+
+    /**
+     * Gets monitored IDs.
+     *
+     * @return monitored IDs with their counts, the most frequent first
+     */
+    synchronized List<Entry> top() {
+        final List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(ids[i], counts[i]));
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            final int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            final int child = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[position] <= counts[child]) {
+                return;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final long id = ids[i];
+        final long count = counts[i];
+        ids[i] = ids[j];
+        counts[i] = counts[j];
+        ids[j] = id;
+        counts[j] = count;
+        slotPositions[slot(ids[i])] = i + 1;
+        slotPositions[slot(ids[j])] = j + 1;
+    }
+
+    /**
+     * Gets slot of ID in the table, or the empty slot where it belongs.
+     */
+    private int slot(final long id) {
+        int slot = home(id);
+        while (slotPositions[slot] != 0 && slotIds[slot] != id) {
+            slot = (slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties the slot and shifts following entries of its probe sequence back, so they stay reachable without tombstones.
+     */
+    private void removeSlot(int slot) {
+        int next = slot;
+        while (true) {
+            next = (next + 1) & slotMask;
+            if (slotPositions[next] == 0) {
+                break;
+            }
+            final int home = home(slotIds[next]);
+            // entry stays if its home is cyclically within (slot, next]
+            if (slot <= next ? slot < home && home <= next : slot < home || home <= next) {
+                continue;
+            }
+            slotIds[slot] = slotIds[next];
+            slotPositions[slot] = slotPositions[next];
+            slot = next;
+        }
+        slotPositions[slot] = 0;
+    }
+
+    private int home(final long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash & slotMask;
+    }
+
+    /**
+     * Monitored ID with its estimated count.
+     */
+    @Value
+    static class Entry {
+        long id;
+        long count;
+    }
+}
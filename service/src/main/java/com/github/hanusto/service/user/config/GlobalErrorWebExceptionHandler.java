@@ -32,8 +32,15 @@ import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
 
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
 /**
  * Default error handler.
+ * <p>
+ * Unavailable upstream is reported as {@code 503 Service Unavailable}, unknown user as {@code 404 Not Found},
+ * any other error as {@code 400 Bad Request}.
+ * </p>
  *
  * @author Tomas Hanus
  */
@@ -59,7 +66,14 @@ class GlobalErrorWebExceptionHandler extends AbstractErrorWebExceptionHandler {
     private Mono<ServerResponse> renderErrorResponse(ServerRequest request) {
         Map<String, Object> errorPropertiesMap = getErrorAttributes(request, false);
 
-        return ServerResponse.status(HttpStatus.BAD_REQUEST)
+        final Throwable error = getError(request);
+        final HttpStatus status = error instanceof UnavailableException
+                ? HttpStatus.SERVICE_UNAVAILABLE
+                : error instanceof NotFoundException ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+        errorPropertiesMap.put("status", status.value());
+        errorPropertiesMap.put("error", status.getReasonPhrase());
+
+        return ServerResponse.status(status)
                              .contentType(MediaType.APPLICATION_JSON_UTF8)
                              .body(BodyInserters.fromObject(errorPropertiesMap));
     }
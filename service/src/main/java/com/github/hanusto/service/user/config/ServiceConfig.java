@@ -17,19 +17,17 @@
 package com.github.hanusto.service.user.config;
 
 import java.util.Collections;
-import java.util.concurrent.TimeUnit;
 
-import com.google.common.cache.CacheBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.web.ResourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
-import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,18 +35,26 @@ import org.springframework.core.annotation.Order;
 import org.springframework.http.codec.EncoderHttpMessageWriter;
 import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.web.server.WebExceptionHandler;
-import reactor.core.publisher.Mono;
 
+import com.github.hanusto.service.user.cache.CachingUserDataProvider;
+import com.github.hanusto.service.user.cache.DiskCachingUserDataProvider;
+import com.github.hanusto.service.user.cache.DiskProfileCache;
+import com.github.hanusto.service.user.cache.EncodedProfileCache;
+import com.github.hanusto.service.user.cache.HotProfiles;
+import com.github.hanusto.service.user.cache.NegativeCachingUserDataProvider;
+import com.github.hanusto.service.user.cache.PeerCachingUserDataProvider;
+import com.github.hanusto.service.user.cache.ProfileCacheAdmin;
+import com.github.hanusto.service.user.limit.ConcurrencyLimitingFilter;
 import com.github.hanusto.service.user.provider.JSONPlaceholderUserDataProvider;
+import com.github.hanusto.service.user.provider.ReplicaUserDataProvider;
 import com.github.hanusto.service.user.provider.UserDataProvider;
-import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.route.PublicProfile;
 
 /**
  * Main configuration of service.
  *
  * @author Tomas Hanus
  */
-@EnableCaching
 @Configuration
 public class ServiceConfig {
 
@@ -72,15 +78,150 @@ public class ServiceConfig {
     }
 
     /**
-     * Exposes default implementation of {@link UserDataProvider}.
+     * Exposes replica of whole dataset in memory as {@link UserDataProvider}, if it is enabled. It answers lookups without I/O,
+     * so it is not cached.
      *
-     * @param config of
-     * @return {@link JSONPlaceholderUserDataProvider} implementation
+     * @param config        of upstream
+     * @param replicaConfig of replica
+     * @param meterRegistry to register metrics
+     * @return {@link ReplicaUserDataProvider} implementation
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.replica.enabled", havingValue = "true")
+    @Bean
+    public UserDataProvider replicaUserDataProvider(final UserDataProviderConfig config,
+                                                    final ReplicaConfig replicaConfig,
+                                                    final MeterRegistry meterRegistry) {
+        return new ReplicaUserDataProvider(config, replicaConfig, meterRegistry);
+    }
+
+    /**
+     * Exposes default implementation of {@link UserDataProvider}, it is cached unless caches are disabled.
+     *
+     * @param config              of
+     * @param cacheConfig         of cache
+     * @param negativeCacheConfig of cache of missing users
+     * @param diskProfileCache    as second tier of cache, if it is enabled
+     * @param peerCacheConfig     of cache shared by peers
+     * @param objectMapper        to encode profiles on disk
+     * @param meterRegistry       to register metrics
+     * @return {@link JSONPlaceholderUserDataProvider} implementation, decorated by {@link NegativeCachingUserDataProvider},
+     * {@link DiskCachingUserDataProvider}, {@link PeerCachingUserDataProvider} and {@link CachingUserDataProvider}
      */
     @Bean
     @ConditionalOnMissingBean
-    public UserDataProvider userDataProvider(final UserDataProviderConfig config) {
-        return new CacheableJSONPlaceholderUserDataProvider(config);
+    public UserDataProvider userDataProvider(final UserDataProviderConfig config,
+                                             final UserProfileCacheConfig cacheConfig,
+                                             final NegativeUserProfileCacheConfig negativeCacheConfig,
+                                             final ObjectProvider<DiskProfileCache> diskProfileCache,
+                                             final PeerCacheConfig peerCacheConfig,
+                                             final ObjectMapper objectMapper,
+                                             final MeterRegistry meterRegistry) {
+        UserDataProvider provider = new JSONPlaceholderUserDataProvider(config, meterRegistry);
+
+        if (negativeCacheConfig.isEnabled()) {
+            provider = new NegativeCachingUserDataProvider(provider, negativeCacheConfig, meterRegistry);
+        }
+
+        final DiskProfileCache diskCache = diskProfileCache.getIfAvailable();
+        if (diskCache != null) {
+            provider = new DiskCachingUserDataProvider(provider, diskCache, objectMapper, meterRegistry);
+        }
+
+        if (peerCacheConfig.isEnabled()) {
+            provider = new PeerCachingUserDataProvider(provider, peerCacheConfig, meterRegistry);
+        }
+
+        return cacheConfig.isEnabled() ? new CachingUserDataProvider(provider, cacheConfig, meterRegistry) : provider;
+    }
+
+    /**
+     * Exposes cache of profiles on disk, it is second tier below cache of profiles in memory.
+     *
+     * @param config of cache
+     * @return {@link DiskProfileCache}
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.disk-cache.enabled", havingValue = "true")
+    @Bean
+    public DiskProfileCache diskProfileCache(final DiskProfileCacheConfig config) {
+        return new DiskProfileCache(config);
+    }
+
+    /**
+     * Exposes cache of encoded profiles, only with cache of profiles, encoded profiles of users that are not cached
+     * would be never reused. Profiles are encoded as {@link PublicProfile}.
+     *
+     * @param objectMapper to encode profiles
+     * @param config       of cache
+     * @return {@link EncodedProfileCache}
+     */
+    @ConditionalOnProperty(prefix = "hanusto.user-service", name = {"cache.enabled", "encoded-cache.enabled"}, havingValue = "true",
+            matchIfMissing = true)
+    @Bean
+    public EncodedProfileCache encodedProfileCache(final ObjectMapper objectMapper, final EncodedProfileCacheConfig config) {
+        return new EncodedProfileCache(PublicProfile.mapper(objectMapper), config);
+    }
+
+    /**
+     * Exposes administration of caches of profiles.
+     *
+     * @param userDataProvider to warm up and invalidate, cache of profiles in memory if it is enabled
+     * @param diskProfileCache as second tier of cache, if it is enabled
+     * @param config           of administration
+     * @return {@link ProfileCacheAdmin}
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.admin.enabled", havingValue = "true")
+    @Bean
+    public ProfileCacheAdmin profileCacheAdmin(final UserDataProvider userDataProvider,
+                                               final ObjectProvider<DiskProfileCache> diskProfileCache,
+                                               final ProfileCacheAdminConfig config) {
+        // cache in memory is the outermost decorator, see userDataProvider()
+        final CachingUserDataProvider cache = userDataProvider instanceof CachingUserDataProvider
+                ? (CachingUserDataProvider) userDataProvider
+                : null;
+
+        return new ProfileCacheAdmin(userDataProvider, cache, diskProfileCache.getIfAvailable(), config);
+    }
+
+    /**
+     * Exposes the most requested users, they are warmed up on startup.
+     *
+     * @param userDataProvider to warm up
+     * @param config           of hot profiles
+     * @return {@link HotProfiles}
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.hot-profiles.enabled", havingValue = "true")
+    @Bean
+    public HotProfiles hotProfiles(final UserDataProvider userDataProvider, final HotProfilesConfig config) {
+        return new HotProfiles(userDataProvider, config);
+    }
+
+    /**
+     * Exposes health of warm-up of the most requested users, service is out of service until it finishes, so readiness
+     * probe of {@code /actuator/health} does not route requests to cold caches.
+     *
+     * @param hotProfiles warmed up on startup
+     * @return {@link HealthIndicator} of warm-up
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.hot-profiles.enabled", havingValue = "true")
+    @Bean
+    public HealthIndicator hotProfilesHealthIndicator(final HotProfiles hotProfiles) {
+        return () -> (hotProfiles.isWarmedUp() ? Health.up() : Health.outOfService())
+                .withDetail("warmUpTotal", hotProfiles.getWarmUpTotal())
+                .withDetail("warmUpCompleted", hotProfiles.getWarmUpCompleted())
+                .build();
+    }
+
+    /**
+     * Exposes adaptive limit of concurrent requests of profile route.
+     *
+     * @param config        of limit
+     * @param meterRegistry to register metrics
+     * @return {@link ConcurrencyLimitingFilter}
+     */
+    @ConditionalOnProperty(value = "hanusto.user-service.concurrency-limit.enabled", havingValue = "true", matchIfMissing = true)
+    @Bean
+    public ConcurrencyLimitingFilter concurrencyLimitingFilter(final ConcurrencyLimitConfig config, final MeterRegistry meterRegistry) {
+        return new ConcurrencyLimitingFilter(config, meterRegistry);
     }
 
     /**
@@ -92,44 +233,74 @@ public class ServiceConfig {
     }
 
     /**
-     * Expose cache manager.
-     *
-     * @return {@link SimpleCacheManager}
+     * Exposes configuration of {@link ReplicaUserDataProvider}.
      */
-    @ConditionalOnProperty(value = "hanusto.user-service.cache.enabled", havingValue = "true", matchIfMissing = true)
-    @Bean
-    public CacheManager cacheManager() {
-        SimpleCacheManager cacheManager = new SimpleCacheManager();
-        cacheManager.setCaches(Collections.singletonList(
-                new ConcurrentMapCache(CacheableJSONPlaceholderUserDataProvider.CACHE_NAME,
-                        CacheBuilder.newBuilder()
-                                    .expireAfterWrite(15, TimeUnit.SECONDS)
-                                    .maximumSize(10)
-                                    .build()
-                                    .asMap(), false)));
-        return cacheManager;
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.replica")
+    public class ReplicaConfig extends ReplicaUserDataProvider.Config {
     }
 
     /**
-     * Cachable implementation of {@link JSONPlaceholderUserDataProvider}.
+     * Exposes configuration of {@link CachingUserDataProvider}.
      */
-    public class CacheableJSONPlaceholderUserDataProvider extends JSONPlaceholderUserDataProvider {
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.cache")
+    public class UserProfileCacheConfig extends CachingUserDataProvider.Config {
+    }
 
-        static final String CACHE_NAME = "userProfiles";
+    /**
+     * Exposes configuration of {@link NegativeCachingUserDataProvider}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.negative-cache")
+    public class NegativeUserProfileCacheConfig extends NegativeCachingUserDataProvider.Config {
+    }
 
-        /**
-         * Default initialization of provider with configuration.
-         *
-         * @param config of provider
-         */
-        CacheableJSONPlaceholderUserDataProvider(final Config config) {
-            super(config);
-        }
+    /**
+     * Exposes configuration of {@link PeerCachingUserDataProvider}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.peer-cache")
+    public class PeerCacheConfig extends PeerCachingUserDataProvider.Config {
+    }
 
-        @Override
-        @Cacheable(CACHE_NAME)
-        public Mono<User> getById(final Long id) {
-            return super.getById(id);
-        }
+    /**
+     * Exposes configuration of {@link DiskProfileCache}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.disk-cache")
+    public class DiskProfileCacheConfig extends DiskProfileCache.Config {
+    }
+
+    /**
+     * Exposes configuration of {@link EncodedProfileCache}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.encoded-cache")
+    public class EncodedProfileCacheConfig extends EncodedProfileCache.Config {
+    }
+
+    /**
+     * Exposes configuration of {@link ProfileCacheAdmin}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.admin")
+    public class ProfileCacheAdminConfig extends ProfileCacheAdmin.Config {
+    }
+
+    /**
+     * Exposes configuration of {@link HotProfiles}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.hot-profiles")
+    public class HotProfilesConfig extends HotProfiles.Config {
+    }
+
+    /**
+     * Exposes configuration of {@link ConcurrencyLimitingFilter}.
+     */
+    @Configuration
+    @ConfigurationProperties(prefix = "hanusto.user-service.concurrency-limit")
+    public class ConcurrencyLimitConfig extends ConcurrencyLimitingFilter.Config {
     }
 }
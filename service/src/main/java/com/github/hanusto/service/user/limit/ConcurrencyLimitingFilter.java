@@ -0,0 +1,164 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.limit;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Filter that sheds requests of {@code GET /profiles/{id}} above adaptive concurrency limit.
+ * <p>
+ * Permit is held until response is written, so latency the limit is derived from includes serialization
+ * and writing of response, not only resolving of profile.
+ * </p>
+ * <p>
+ * Rejected requests are responded immediately with {@code 503 Service Unavailable} and {@code Retry-After} header,
+ * so they do not queue up. Limit is exposed by metric {@code user.profiles.concurrency.limit},
+ * rejected requests by metric {@code user.profiles.concurrency.rejected}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ * @see GradientConcurrencyLimit
+ */
+@Slf4j
+public class ConcurrencyLimitingFilter implements WebFilter {
+
+    private static final String METRIC_PREFIX = "user.profiles.concurrency.";
+    private static final PathPattern PROFILE_PATH = new PathPatternParser().parse("/profiles/{id}");
+
+    private final GradientConcurrencyLimit limit;
+    private final String retryAfter;
+    private final Counter rejected;
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param config        of limit
+     * @param meterRegistry to register metrics
+     */
+    public ConcurrencyLimitingFilter(final Config config, final MeterRegistry meterRegistry) {
+        LOG.debug("Configuration of concurrency limit: {}", config);
+
+        this.limit = new GradientConcurrencyLimit(config);
+        this.retryAfter = String.valueOf(Math.max(1, config.getRetryAfter().getSeconds()));
+
+        Gauge.builder(METRIC_PREFIX + "limit", limit, GradientConcurrencyLimit::getLimit)
+             .description("Current limit of concurrent requests")
+             .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "in-flight", limit, GradientConcurrencyLimit::getInFlight)
+             .description("Requests in flight")
+             .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_PREFIX + "rejected")
+                               .description("Requests rejected above concurrency limit")
+                               .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(final ServerWebExchange exchange, final WebFilterChain chain) {
+        if (!isLimited(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+
+        if (!limit.tryAcquire()) {
+            rejected.increment();
+
+            final ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+            return response.setComplete();
+        }
+
+        final long start = System.nanoTime();
+        return Mono.defer(() -> chain.filter(exchange))
+                   .doFinally(signal -> limit.release(System.nanoTime() - start, isSuccess(exchange, signal)));
+    }
+
+    private static boolean isLimited(final ServerHttpRequest request) {
+        return request.getMethod() == HttpMethod.GET && PROFILE_PATH.matches(request.getPath().pathWithinApplication());
+    }
+
+    /**
+     * Failed request is rendered by error handler after the filter, so only completed request with no error status
+     * is sample of healthy latency.
+     */
+    private static boolean isSuccess(final ServerWebExchange exchange, final SignalType signal) {
+        final HttpStatus status = exchange.getResponse().getStatusCode();
+        return signal == SignalType.ON_COMPLETE && (status == null || !status.is5xxServerError());
+    }
+
+    /**
+     * Configuration holder.
+     */
+    @Data
+    public static class Config {
+        /**
+         * Whether concurrent requests are limited.
+         */
+        private boolean enabled = true;
+        /**
+         * Limit before any latency is observed.
+         */
+        private int initialLimit = 100;
+        /**
+         * Minimal limit.
+         */
+        private int minLimit = 10;
+        /**
+         * Maximal limit.
+         */
+        private int maxLimit = 1000;
+        /**
+         * Count of requests the limit grows by when latency is stable.
+         */
+        private int queueSize = 4;
+        /**
+         * Weight of new limit, lower values change limit slower.
+         */
+        private double smoothing = 0.2;
+        /**
+         * Ratio of latency to long term latency that is tolerated before limit shrinks.
+         */
+        private double tolerance = 1.5;
+        /**
+         * Count of samples long term latency is averaged from.
+         */
+        private int longWindow = 600;
+        /**
+         * Time after that rejected client should retry.
+         */
+        @NonNull
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+/**
+ * Concurrency limit derived from observed latency by gradient algorithm.
+ * <p>
+ * Long term latency is tracked as exponential moving average. Every sample compares it with the latest latency,
+ * their ratio (the gradient) shrinks the limit when latency rises because requests queue up, while stable latency
+ * lets the limit grow by {@link ConcurrencyLimitingFilter.Config#getQueueSize()}. Limit does not grow while less
+ * than half of it is used, as such samples do not tell anything about capacity.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+public class GradientConcurrencyLimit {
+
+    /**
+     * Long term latency above this multiple of the latest one is drifted down, so limit recovers after latency spike.
+     */
+    private static final double DRIFT_THRESHOLD = 2;
+    private static final double DRIFT_FACTOR = 0.95;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final double smoothing;
+    private final double tolerance;
+    private final int longWindow;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int currentLimit;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private double limit;
+    private double longRtt;
+
+    /**
+     * Initialization with configuration.
+     *
+     * @param config of limit
+     */
+    public GradientConcurrencyLimit(final ConcurrencyLimitingFilter.Config config) {
+        Assert.isTrue(config.getMinLimit() > 0, "Minimal limit must be positive");
+        Assert.isTrue(config.getMinLimit() <= config.getInitialLimit() && config.getInitialLimit() <= config.getMaxLimit(),
+                "Initial limit must be in range of minimal and maximal limit");
+        Assert.isTrue(config.getSmoothing() > 0 && config.getSmoothing() <= 1, "Smoothing must be in range (0, 1]");
+        Assert.isTrue(config.getTolerance() >= 1, "Tolerance must not be less than 1");
+        Assert.isTrue(config.getLongWindow() > 0, "Long window must be positive");
+
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.queueSize = config.getQueueSize();
+        this.smoothing = config.getSmoothing();
+        this.tolerance = config.getTolerance();
+        this.longWindow = config.getLongWindow();
+        this.limit = config.getInitialLimit();
+        this.currentLimit = config.getInitialLimit();
+    }
+
+    /**
+     * Acquires permission for request.
+     *
+     * @return {@code true} if request is permitted, {@code false} if limit is reached
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= currentLimit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Releases permission of request and updates the limit by its latency.
+     *
+     * @param latencyNanos of request
+     * @param sample       whether latency is meaningful sample, e.g. failed requests are not
+     */
+    public void release(final long latencyNanos, final boolean sample) {
+        final int inFlightBefore = inFlight.getAndDecrement();
+
+        if (sample && latencyNanos > 0) {
+            update(latencyNanos, inFlightBefore);
+        }
+    }
+
+    private synchronized void update(final long latencyNanos, final int inFlightBefore) {
+        longRtt = longRtt == 0 ? latencyNanos : longRtt + (latencyNanos - longRtt) / longWindow;
+        if (longRtt / latencyNanos > DRIFT_THRESHOLD) {
+            longRtt *= DRIFT_FACTOR;
+        }
+
+        if (inFlightBefore < limit / 2) {
+            return;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / latencyNanos));
+        final double newLimit = limit * gradient + queueSize;
+
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+        currentLimit = (int) limit;
+    }
+
+    /**
+     * Gets current limit.
+     *
+     * @return maximum count of concurrent requests
+     */
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    /**
+     * Gets count of requests in flight.
+     *
+     * @return count of requests
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
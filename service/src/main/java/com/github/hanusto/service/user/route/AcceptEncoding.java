@@ -0,0 +1,94 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.util.StringUtils;
+
+import com.github.hanusto.service.user.cache.EncodedProfile.Coding;
+
+/**
+ * Negotiation of content coding by {@code Accept-Encoding} request header.
+ *
+ * @author Tomas Hanus
+ */
+final class AcceptEncoding {
+
+    private static final String WILDCARD = "*";
+    private static final String QUALITY_PARAM = "q=";
+    private static final float NOT_LISTED = -1;
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * Selects coding preferred by client, gzip wins over deflate of the same quality.
+     *
+     * @param headerValues of {@code Accept-Encoding} header
+     * @return {@link Coding#GZIP} or {@link Coding#DEFLATE} if client accepts it, otherwise {@link Coding#IDENTITY}
+     */
+    static Coding preferred(final List<String> headerValues) {
+        float gzip = NOT_LISTED;
+        float deflate = NOT_LISTED;
+        float wildcard = NOT_LISTED;
+
+        for (String headerValue : headerValues) {
+            for (String element : StringUtils.commaDelimitedListToStringArray(headerValue)) {
+                final String[] parts = StringUtils.delimitedListToStringArray(element, ";");
+                final String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+                final float quality = quality(parts);
+
+                if (Coding.GZIP.getName().equals(coding) || "x-gzip".equals(coding)) {
+                    gzip = Math.max(gzip, quality);
+                } else if (Coding.DEFLATE.getName().equals(coding)) {
+                    deflate = Math.max(deflate, quality);
+                } else if (WILDCARD.equals(coding)) {
+                    wildcard = Math.max(wildcard, quality);
+                }
+            }
+        }
+
+        // wildcard applies only to codings that are not listed
+        gzip = gzip == NOT_LISTED ? wildcard : gzip;
+        deflate = deflate == NOT_LISTED ? wildcard : deflate;
+
+        if (gzip > 0 && gzip >= deflate) {
+            return Coding.GZIP;
+        }
+        return deflate > 0 ? Coding.DEFLATE : Coding.IDENTITY;
+    }
+
+    /**
+     * Gets quality of coding, invalid quality makes the coding not acceptable.
+     */
+    private static float quality(final String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String param = parts[i].trim();
+            if (param.startsWith(QUALITY_PARAM)) {
+                try {
+                    return Float.parseFloat(param.substring(QUALITY_PARAM.length()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static org.springframework.web.reactive.function.server.ServerResponse.noContent;
+import static org.springframework.web.reactive.function.server.ServerResponse.notFound;
+
+import java.net.URI;
+import java.util.Collections;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.cache.ProfileCacheAdmin;
+
+/**
+ * Router to administer caches of profiles, it is exposed only if administration is enabled.
+ *
+ * @author Tomas Hanus
+ */
+@RequiredArgsConstructor
+@Configuration
+@ConditionalOnProperty(value = "hanusto.user-service.admin.enabled", havingValue = "true")
+public class AdminRouterConfig {
+
+    private static final String WARM_UP_PATH = "/admin/cache/warm-up";
+
+    private final ProfileCacheAdmin profileCacheAdmin;
+
+    /**
+     * Exposes routes {@code GET /admin/cache} with statistics of caches, {@code DELETE /admin/cache} to invalidate
+     * all users, {@code DELETE /admin/cache/profiles/{id}} and {@code DELETE /admin/cache/profiles?id=1,2} to invalidate
+     * some users, {@code POST /admin/cache/warm-up} with JSON array of IDs to start warm-up and
+     * {@code GET /admin/cache/warm-up} with its progress. Warm-up is responded with {@code 409 Conflict} while another
+     * one is running.
+     *
+     * @return route function
+     */
+    @Bean
+    public RouterFunction<ServerResponse> cacheAdminRoute() {
+        return RouterFunctions
+                .route(RequestPredicates.GET("/admin/cache"), this::stats)
+                .andRoute(RequestPredicates.DELETE("/admin/cache"), this::invalidateAll)
+                .andRoute(RequestPredicates.DELETE("/admin/cache/profiles/{id}"), this::invalidate)
+                .andRoute(RequestPredicates.DELETE("/admin/cache/profiles"), this::invalidateSome)
+                .andRoute(RequestPredicates.POST(WARM_UP_PATH)
+                                           .and(RequestPredicates.contentType(MediaType.APPLICATION_JSON)), this::warmUp)
+                .andRoute(RequestPredicates.GET(WARM_UP_PATH), this::warmUpProgress);
+    }
+
+    private Mono<ServerResponse> stats(ServerRequest request) {
+        return ServerResponse
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody(profileCacheAdmin.stats());
+    }
+
+    private Mono<ServerResponse> invalidate(ServerRequest request) {
+        profileCacheAdmin.invalidate(Collections.singletonList(RouterConfig.userId(request)));
+
+        return noContent().build();
+    }
+
+    /**
+     * Invalidates users in {@code id} query params, params can contain comma separated IDs too.
+     */
+    private Mono<ServerResponse> invalidateSome(ServerRequest request) {
+        profileCacheAdmin.invalidate(RouterConfig.userIds(request));
+
+        return noContent().build();
+    }
+
+    private Mono<ServerResponse> invalidateAll(ServerRequest request) {
+        profileCacheAdmin.invalidateAll();
+
+        return noContent().build();
+    }
+
+    private Mono<ServerResponse> warmUp(ServerRequest request) {
+        return request
+                .bodyToFlux(Long.class)
+                .collectList()
+                .flatMap(ids -> profileCacheAdmin
+                        .warmUp(ids)
+                        .map(progress -> ServerResponse
+                                .accepted()
+                                .location(URI.create(WARM_UP_PATH))
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .syncBody(progress))
+                        .orElseGet(() -> ServerResponse
+                                .status(HttpStatus.CONFLICT)
+                                .location(URI.create(WARM_UP_PATH))
+                                .build()));
+    }
+
+    private Mono<ServerResponse> warmUpProgress(ServerRequest request) {
+        return profileCacheAdmin
+                .getWarmUp()
+                .map(progress -> ServerResponse
+                        .ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .syncBody(progress))
+                .orElseGet(() -> notFound().build());
+    }
+}
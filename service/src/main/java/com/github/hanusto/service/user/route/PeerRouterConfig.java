@@ -0,0 +1,136 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static com.github.hanusto.service.user.cache.PeerCachingUserDataProvider.PEER_PATH;
+import static org.springframework.web.reactive.function.server.ServerResponse.notFound;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.cache.CachingUserDataProvider;
+import com.github.hanusto.service.user.cache.PeerCachingUserDataProvider;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Router to serve users to peers, see {@link PeerCachingUserDataProvider}. It is exposed only if peer cache is enabled.
+ * <p>
+ * Users are served from cache in memory if they are cached, otherwise they are loaded by local tiers below peer cache,
+ * see {@link PeerCachingUserDataProvider#getLocal()}. So request of peer is never forwarded to another peer, peers that
+ * do not agree on owner, e.g. during rolling change of peers, cannot bounce request between each other.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Configuration
+@ConditionalOnProperty(value = "hanusto.user-service.peer-cache.enabled", havingValue = "true")
+public class PeerRouterConfig {
+
+    /**
+     * Cache of profiles in memory, {@code null} if it is disabled.
+     */
+    private final CachingUserDataProvider cache;
+    private final UserDataProvider localDataProvider;
+
+    /**
+     * Initialization with dependencies.
+     *
+     * @param userDataProvider of users, decorated by {@link PeerCachingUserDataProvider}
+     */
+    public PeerRouterConfig(final UserDataProvider userDataProvider) {
+        // cache in memory is the outermost decorator and peer cache is right below it, see ServiceConfig.userDataProvider()
+        this.cache = userDataProvider instanceof CachingUserDataProvider ? (CachingUserDataProvider) userDataProvider : null;
+        final UserDataProvider peerDataProvider = cache != null ? cache.getDelegate() : userDataProvider;
+
+        Assert.isInstanceOf(PeerCachingUserDataProvider.class, peerDataProvider, "Users must be provided by peer cache");
+
+        this.localDataProvider = ((PeerCachingUserDataProvider) peerDataProvider).getLocal();
+    }
+
+    /**
+     * Exposes routes {@code /peer/profiles/{id}}, that responds {@code 404 Not Found} for missing user, and batch route
+     * {@code /peer/profiles?id=1,2}. Users owned by this instance are served from its caches, so peers do not call upstream.
+     *
+     * @return route function
+     */
+    @Bean
+    public RouterFunction<ServerResponse> peerProfileRoute() {
+        return RouterFunctions
+                .route(RequestPredicates.GET(PEER_PATH + "/{id}"), this::profile)
+                .andRoute(RequestPredicates.GET(PEER_PATH), this::profiles);
+    }
+
+    private Mono<ServerResponse> profile(ServerRequest request) {
+        final long userId = RouterConfig.userId(request);
+
+        return Mono.defer(() -> {
+                    final User cached = cache == null ? null : cache.getIfPresent(userId);
+                    return cached != null ? Mono.just(cached) : localDataProvider.getById(userId);
+                })
+                .flatMap(user -> ServerResponse
+                        .ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .syncBody(user))
+                .switchIfEmpty(notFound().build())
+                .onErrorResume(NotFoundException.class, e -> notFound().build());
+    }
+
+    private Mono<ServerResponse> profiles(ServerRequest request) {
+        return ServerResponse
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(getByIds(RouterConfig.userIds(request)), User.class);
+    }
+
+    /**
+     * Gets cached users first, the missing ones are loaded by local tiers in one batch.
+     */
+    private Flux<User> getByIds(final List<Long> userIds) {
+        return Flux.defer(() -> {
+            final List<User> cached = new ArrayList<>(userIds.size());
+            final List<Long> misses = new ArrayList<>(userIds.size());
+            for (Long userId : userIds) {
+                final User user = cache == null ? null : cache.getIfPresent(userId);
+                if (user != null) {
+                    cached.add(user);
+                } else {
+                    misses.add(userId);
+                }
+            }
+
+            return misses.isEmpty()
+                    ? Flux.fromIterable(cached)
+                    : Flux.fromIterable(cached).concatWith(localDataProvider.getByIds(misses));
+        });
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Base64;
+
+/**
+ * Opaque cursor of window of posts, it encodes offset of the window, so clients do not depend on paging of upstream.
+ *
+ * @author Tomas Hanus
+ */
+final class PostsCursor {
+
+    private static final String PREFIX = "posts:";
+
+    private PostsCursor() {
+    }
+
+    /**
+     * Encodes cursor.
+     *
+     * @param offset of window, count of posts before it
+     * @return URL safe cursor
+     */
+    static String encode(final long offset) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + offset).getBytes(UTF_8));
+    }
+
+    /**
+     * Decodes cursor.
+     *
+     * @param cursor encoded by {@link #encode(long)}
+     * @return offset of window
+     * @throws IllegalArgumentException if cursor is not valid
+     */
+    static long decode(final String cursor) {
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+            if (decoded.startsWith(PREFIX)) {
+                final long offset = Long.parseLong(decoded.substring(PREFIX.length()));
+                if (offset >= 0) {
+                    return offset;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // invalid Base64 or number, NumberFormatException is IllegalArgumentException too
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
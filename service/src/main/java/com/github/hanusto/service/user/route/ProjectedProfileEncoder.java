@@ -0,0 +1,123 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Encoder of {@link User} projected to requested fields, only projected fields are written. User is decoded completely
+ * before, projection saves only encoding of fields that are not requested.
+ *
+ * @author Tomas Hanus
+ */
+final class ProjectedProfileEncoder {
+
+    private static final int INITIAL_SIZE = 256;
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * New instance.
+     *
+     * @param jsonFactory to create generators
+     */
+    ProjectedProfileEncoder(final JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Encodes projected user to UTF-8 JSON, fields are in the same order as in complete profile.
+     *
+     * @param user       to encode
+     * @param projection of user
+     * @return encoded profile
+     */
+    byte[] encode(final User user, final Projection projection) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(INITIAL_SIZE);
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.writeStartObject();
+            for (Projection.UserField field : projection.getUserFields()) {
+                switch (field) {
+                    case NAME:
+                        generator.writeStringField("name", user.getName());
+                        break;
+                    case USERNAME:
+                        generator.writeStringField("username", user.getUsername());
+                        break;
+                    case EMAIL:
+                        generator.writeStringField("email", user.getEmail());
+                        break;
+                    case POSTS:
+                        writePosts(generator, user.getPosts(), projection);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unsupported field: " + field);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Profile cannot be encoded", e);
+        }
+        return output.toByteArray();
+    }
+
+    private static void writePosts(final JsonGenerator generator, final Iterable<Post> posts, final Projection projection) throws IOException {
+        generator.writeFieldName("posts");
+        if (posts == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartArray();
+        for (Post post : posts) {
+            generator.writeStartObject();
+            for (Projection.PostField field : projection.getPostFields()) {
+                switch (field) {
+                    case ID:
+                        writeNumber(generator, "id", post.getId());
+                        break;
+                    case TITLE:
+                        generator.writeStringField("title", post.getTitle());
+                        break;
+                    default:
+                        throw new IllegalStateException("Unsupported field: " + field);
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeNumber(final JsonGenerator generator, final String name, final Long value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+}
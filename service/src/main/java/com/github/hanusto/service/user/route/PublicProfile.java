@@ -0,0 +1,46 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Jackson mix-in of {@link User} encoded by {@code /profiles/{id}}. ID of user keys caches and it is exchanged
+ * with peers and disk cache, but it is not part of public profile.
+ *
+ * @author Tomas Hanus
+ */
+@JsonIgnoreProperties("id")
+public abstract class PublicProfile {
+
+    private PublicProfile() {
+    }
+
+    /**
+     * Creates mapper that encodes public profiles.
+     *
+     * @param objectMapper to copy configuration of
+     * @return copy of mapper with this mix-in
+     */
+    public static ObjectMapper mapper(final ObjectMapper objectMapper) {
+        return objectMapper.copy().addMixIn(User.class, PublicProfile.class);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.route;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Filter that measures requests end to end, including serialization and writing of response.
+ * <p>
+ * Requests are recorded by timer {@code user.route.requests} tagged by route and status, route is named by
+ * {@link #route(String)} filter of route function, other requests are not recorded. Requests in flight
+ * are exposed by gauge {@code user.route.requests.in-flight}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+public class RouteMetricsFilter implements WebFilter {
+
+    private static final String ROUTE_ATTRIBUTE = RouteMetricsFilter.class.getName() + ".route";
+    private static final String METRIC_NAME = "user.route.requests";
+    private static final String STATUS_ERROR = "ERROR";
+    private static final String STATUS_CANCELLED = "CANCELLED";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Initialization with registry.
+     *
+     * @param meterRegistry to register metrics
+     */
+    public RouteMetricsFilter(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder(METRIC_NAME + ".in-flight", inFlight, AtomicInteger::get)
+             .description("Requests in flight")
+             .strongReference(true)
+             .register(meterRegistry);
+    }
+
+    /**
+     * Names route whose requests are recorded.
+     *
+     * @param name of route
+     * @return filter of route function
+     */
+    public static HandlerFilterFunction<ServerResponse, ServerResponse> route(final String name) {
+        return (request, next) -> {
+            request.attributes().put(ROUTE_ATTRIBUTE, name);
+            return next.handle(request);
+        };
+    }
+
+    @Override
+    public Mono<Void> filter(final ServerWebExchange exchange, final WebFilterChain chain) {
+        return Mono.defer(() -> {
+            inFlight.incrementAndGet();
+            final long start = System.nanoTime();
+
+            return chain.filter(exchange)
+                        .doFinally(signal -> {
+                            inFlight.decrementAndGet();
+                            record(exchange, signal, start);
+                        });
+        });
+    }
+
+    private void record(final ServerWebExchange exchange, final SignalType signal, final long start) {
+        final String route = exchange.getAttribute(ROUTE_ATTRIBUTE);
+        if (route == null) {
+            return;
+        }
+
+        Timer.builder(METRIC_NAME)
+             .tag("route", route)
+             .tag("status", status(exchange, signal))
+             .description("Time of request including writing of response")
+             .publishPercentiles(0.5, 0.95, 0.99)
+             .publishPercentileHistogram()
+             .register(meterRegistry)
+             .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Status of response, failed request is rendered by error handler after the filter, so its status is not known yet.
+     */
+    private static String status(final ServerWebExchange exchange, final SignalType signal) {
+        if (signal == SignalType.ON_ERROR) {
+            return STATUS_ERROR;
+        }
+        if (signal == SignalType.CANCEL) {
+            return STATUS_CANCELLED;
+        }
+
+        final HttpStatus status = exchange.getResponse().getStatusCode();
+        return String.valueOf(status == null ? HttpStatus.OK.value() : status.value());
+    }
+}
@@ -18,20 +18,41 @@ package com.github.hanusto.service.user.route;
 
 import static org.springframework.web.reactive.function.server.ServerResponse.notFound;
 
-import lombok.RequiredArgsConstructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
+import com.github.hanusto.service.user.cache.EncodedProfile;
+import com.github.hanusto.service.user.cache.EncodedProfileCache;
+import com.github.hanusto.service.user.cache.HotProfiles;
+import com.github.hanusto.service.user.provider.Projection;
 import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
 import com.github.hanusto.service.user.provider.model.User;
 
 /**
@@ -40,14 +61,51 @@ import com.github.hanusto.service.user.provider.model.User;
  * @author Tomas Hanus
  */
 @Slf4j
-@RequiredArgsConstructor
 @Configuration
 public class RouterConfig {
 
+    private static final String QUERY_PARAM_ID = "id";
+    private static final String QUERY_PARAM_FIELDS = "fields";
+    private static final String QUERY_PARAM_POSTS_LIMIT = "postsLimit";
+    private static final String QUERY_PARAM_CURSOR = "cursor";
+    private static final int MAX_POSTS_LIMIT = 1000;
+    private static final String WILDCARD_ETAG = "*";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final Projection WITHOUT_POSTS = Projection.ALL.withoutPosts();
+
     private final UserDataProvider userDataProvider;
+    private final ObjectMapper objectMapper;
+    /**
+     * Cache of encoded profiles, {@code null} if it is disabled.
+     */
+    private final EncodedProfileCache encodedProfiles;
+    /**
+     * Recorder of requested users, {@code null} if it is disabled.
+     */
+    private final HotProfiles hotProfiles;
+    private final ObjectWriter profileWriter;
+
+    /**
+     * Initialization with dependencies.
+     *
+     * @param userDataProvider    of users
+     * @param objectMapper        to encode profiles
+     * @param encodedProfileCache of cached users, if it is enabled
+     * @param hotProfiles         to record requested users, if it is enabled
+     */
+    public RouterConfig(final UserDataProvider userDataProvider, final ObjectMapper objectMapper,
+                        final ObjectProvider<EncodedProfileCache> encodedProfileCache, final ObjectProvider<HotProfiles> hotProfiles) {
+        this.userDataProvider = userDataProvider;
+        this.objectMapper = objectMapper;
+        this.encodedProfiles = encodedProfileCache.getIfAvailable();
+        this.hotProfiles = hotProfiles.getIfAvailable();
+        this.profileWriter = PublicProfile.mapper(objectMapper).writerFor(User.class);
+    }
 
     /**
-     * Exposes route for {@code /profiles/{id}}.
+     * Exposes route for {@code /profiles/{id}} (fields can be projected by {@code ?fields=name,posts.title} and posts
+     * can be windowed by {@code ?postsLimit=10&cursor=...}),
+     * {@code /profiles/{id}/posts} and batch route {@code /profiles?id=1&id=2}.
      *
      * @return route function
      */
@@ -56,22 +114,253 @@ public class RouterConfig {
         return RouterFunctions
                 .route(RequestPredicates.GET("/profiles/{id}")
                                         .and(RequestPredicates.accept(MediaType.APPLICATION_JSON)),
-                        this::profile);
+                        RouteMetricsFilter.route("profile").apply(this::profile))
+                .andRoute(RequestPredicates.GET("/profiles/{id}/posts")
+                                           .and(RequestPredicates.accept(MediaType.APPLICATION_STREAM_JSON, MediaType.TEXT_EVENT_STREAM)),
+                        RouteMetricsFilter.route("posts").apply(this::posts))
+                .andRoute(RequestPredicates.GET("/profiles")
+                                           .and(RequestPredicates.accept(MediaType.APPLICATION_JSON, MediaType.APPLICATION_STREAM_JSON)),
+                        RouteMetricsFilter.route("profiles").apply(this::profiles));
+    }
+
+    /**
+     * Exposes filter that measures requests of routes.
+     *
+     * @param meterRegistry to register metrics
+     * @return {@link RouteMetricsFilter}
+     */
+    @Bean
+    public RouteMetricsFilter routeMetricsFilter(final MeterRegistry meterRegistry) {
+        return new RouteMetricsFilter(meterRegistry);
     }
 
     private Mono<ServerResponse> profile(ServerRequest request) {
+        final long userId = userId(request);
+        record(userId);
+        final Projection projection = Projection.of(request.queryParam(QUERY_PARAM_FIELDS).orElse(""));
+
+        LOG.trace("Getting data for user: {}, projection: {}", userId, projection);
+
+        final Optional<String> postsLimit = request.queryParam(QUERY_PARAM_POSTS_LIMIT);
+        if (postsLimit.isPresent() && projection.includesPosts()) {
+            final long offset = request.queryParam(QUERY_PARAM_CURSOR).map(PostsCursor::decode).orElse(0L);
+            return windowedProfile(request, userId, projection, offset, postsLimit(postsLimit.get()));
+        }
+        if (!projection.isAll()) {
+            return projectedProfile(userId, projection);
+        }
+
+        if (encodedProfiles != null) {
+            final EncodedProfile.Coding coding = AcceptEncoding.preferred(request.headers().header(HttpHeaders.ACCEPT_ENCODING));
+
+            return userDataProvider
+                    .getById(userId)
+                    .map(user -> encodedProfiles.get(user).representation(coding))
+                    .flatMap(encoded -> notModified(request, encoded.etag())
+                            ? ServerResponse
+                                    .status(HttpStatus.NOT_MODIFIED)
+                                    .eTag(encoded.etag())
+                                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                                    .build()
+                            : ServerResponse
+                                    .ok()
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .contentLength(encoded.size())
+                                    .eTag(encoded.etag())
+                                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                                    .headers(headers -> {
+                                        if (encoded.coding() != EncodedProfile.Coding.IDENTITY) {
+                                            headers.set(HttpHeaders.CONTENT_ENCODING, encoded.coding().getName());
+                                        }
+                                    })
+                                    .body(fromRepresentation(encoded)))
+                    .switchIfEmpty(notFound().build());
+        }
+
+        return userDataProvider
+                .getById(userId)
+                .map(this::encode)
+                .flatMap(json -> ServerResponse
+                        .ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .contentLength(json.length)
+                        .syncBody(json))
+                .switchIfEmpty(notFound().build());
+    }
+
+    /**
+     * Encodes complete public profile, without ID of user.
+     */
+    private byte[] encode(final User user) {
+        try {
+            return profileWriter.writeValueAsBytes(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Profile cannot be encoded", e);
+        }
+    }
+
+    /**
+     * Gets profile projected to requested fields, it is encoded per request.
+     */
+    private Mono<ServerResponse> projectedProfile(final long userId, final Projection projection) {
+        final ProjectedProfileEncoder encoder = new ProjectedProfileEncoder(objectMapper.getFactory());
+
+        return userDataProvider
+                .getById(userId, projection)
+                .map(user -> encoder.encode(user, projection))
+                .flatMap(json -> ServerResponse
+                        .ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .contentLength(json.length)
+                        .syncBody(json))
+                .switchIfEmpty(notFound().build());
+    }
+
+    /**
+     * Gets profile with window of its posts, user and the window are fetched concurrently. One more post than the window
+     * holds is fetched, if it exists, link to the next window is responded in {@code Link} header.
+     */
+    private Mono<ServerResponse> windowedProfile(final ServerRequest request, final long userId, final Projection projection,
+                                                 final long offset, final int limit) {
+        final ProjectedProfileEncoder encoder = new ProjectedProfileEncoder(objectMapper.getFactory());
+        final Mono<List<Post>> window = userDataProvider.getPosts(userId, offset, limit + 1).collectList();
+
+        return userDataProvider
+                .getById(userId, projection.withoutPosts())
+                .zipWith(window)
+                .flatMap(userWithPosts -> {
+                    final User user = userWithPosts.getT1();
+                    final List<Post> posts = userWithPosts.getT2();
+                    final boolean hasNext = posts.size() > limit;
+                    final byte[] json = encoder.encode(new User(user.getId(), user.getName(), user.getUsername(), user.getEmail(),
+                            hasNext ? posts.subList(0, limit) : posts), projection);
+
+                    final ServerResponse.BodyBuilder response = ServerResponse
+                            .ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .contentLength(json.length);
+                    if (hasNext) {
+                        final String next = UriComponentsBuilder.fromPath(request.path())
+                                                                .query(request.uri().getRawQuery())
+                                                                .replaceQueryParam(QUERY_PARAM_CURSOR, PostsCursor.encode(offset + limit))
+                                                                .build()
+                                                                .toUriString();
+                        response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+                    }
+                    return response.syncBody(json);
+                })
+                .switchIfEmpty(notFound().build());
+    }
+
+    private static int postsLimit(final String value) {
+        final int limit;
+        try {
+            limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid posts limit: " + value, e);
+        }
+        Assert.isTrue(limit > 0 && limit <= MAX_POSTS_LIMIT, "Posts limit must be between 1 and " + MAX_POSTS_LIMIT);
+        return limit;
+    }
+
+    /**
+     * Checks whether client already has the profile, {@code If-None-Match} is compared weakly, as HTTP requires.
+     */
+    private static boolean notModified(final ServerRequest request, final String etag) {
+        return request.headers().asHttpHeaders().getIfNoneMatch().stream()
+                      .anyMatch(tag -> WILDCARD_ETAG.equals(tag) || etag.equals(tag) || (WEAK_ETAG_PREFIX + etag).equals(tag));
+    }
+
+    /**
+     * Streams posts of user as they are decoded from upstream, as {@link MediaType#TEXT_EVENT_STREAM} if client accepts it,
+     * otherwise as {@link MediaType#APPLICATION_STREAM_JSON}.
+     * <p>
+     * Upstream responds with no posts for unknown user, so user is resolved first without posts (it is usually cached)
+     * and unknown user is responded with {@code 404 Not Found}. Posts are fetched only by the stream.
+     * </p>
+     */
+    private Mono<ServerResponse> posts(ServerRequest request) {
+        final long userId = userId(request);
+
+        LOG.trace("Getting posts of user: {}", userId);
+
+        final MediaType contentType = request.headers().accept().contains(MediaType.TEXT_EVENT_STREAM)
+                ? MediaType.TEXT_EVENT_STREAM
+                : MediaType.APPLICATION_STREAM_JSON;
+
+        return userDataProvider
+                .getById(userId, WITHOUT_POSTS)
+                .flatMap(user -> ServerResponse
+                        .ok()
+                        .contentType(contentType)
+                        .body(userDataProvider.getPosts(userId), Post.class))
+                .switchIfEmpty(notFound().build());
+    }
+
+    /**
+     * Records request of user for warm-up on the next startup, if hot profiles are enabled.
+     */
+    private void record(final long userId) {
+        if (hotProfiles != null) {
+            hotProfiles.record(userId);
+        }
+    }
+
+    /**
+     * Gets IDs of users in {@code id} query params, params can contain comma separated IDs too.
+     */
+    static List<Long> userIds(ServerRequest request) {
+        final List<Long> userIds = request.queryParams().getOrDefault(QUERY_PARAM_ID, Collections.emptyList()).stream()
+                                          .flatMap(value -> Arrays.stream(StringUtils.commaDelimitedListToStringArray(value)))
+                                          .map(String::trim)
+                                          .filter(StringUtils::hasText)
+                                          .map(Long::valueOf)
+                                          .collect(Collectors.toList());
+
+        Assert.notEmpty(userIds, "ID query param must be present");
+
+        return userIds;
+    }
+
+    static long userId(ServerRequest request) {
         final String id = request.pathVariable("id");
 
         Assert.hasText(id, "ID path variable must be present");
 
-        long userId = Long.valueOf(id);
+        return Long.parseLong(id);
+    }
 
-        LOG.trace("Getting data for user: {}", userId);
+    /**
+     * Writes representation of encoded profile to response as is, without serialization and compression.
+     */
+    private static BodyInserter<EncodedProfile.Representation, ReactiveHttpOutputMessage> fromRepresentation(
+            final EncodedProfile.Representation encoded) {
+        return (message, context) -> message.writeWith(Mono.fromSupplier(() -> encoded.asDataBuffer(message.bufferFactory())));
+    }
+
+    /**
+     * Gets profiles of all users in {@code id} query params, params can contain comma separated IDs too.
+     * <p>
+     * Profiles are streamed as they are resolved if client accepts {@link MediaType#APPLICATION_STREAM_JSON},
+     * otherwise they are returned as JSON array.
+     * </p>
+     */
+    private Mono<ServerResponse> profiles(ServerRequest request) {
+        final List<Long> userIds = userIds(request);
+
+        LOG.trace("Getting data for users: {}", userIds);
+
+        if (hotProfiles != null) {
+            userIds.forEach(hotProfiles::record);
+        }
+
+        final MediaType contentType = request.headers().accept().contains(MediaType.APPLICATION_STREAM_JSON)
+                ? MediaType.APPLICATION_STREAM_JSON
+                : MediaType.APPLICATION_JSON;
 
         return ServerResponse
                 .ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(userDataProvider.getById(userId), User.class)
-                .switchIfEmpty(notFound().build());
+                .contentType(contentType)
+                .body(userDataProvider.getByIds(userIds), User.class);
     }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
+/**
+ * Test suite for {@link CachingUserDataProvider}.
+ *
+ * @author Tomas Hanus
+ */
+class CachingUserDataProviderTest {
+
+    private static final User USER = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+    private static final User USER_REFRESHED = new User(1L, "Tomas", "Hanus", "tomas@hanus.com", Collections.emptyList());
+
+    private final AtomicLong time = new AtomicLong();
+
+    private UserDataProvider mockDataProvider;
+    private CachingUserDataProvider TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        mockDataProvider = mock(UserDataProvider.class);
+
+        final CachingUserDataProvider.Config config = new CachingUserDataProvider.Config();
+        config.setRefreshAfter(Duration.ofSeconds(15));
+        config.setExpireAfter(Duration.ofSeconds(60));
+        config.setJitter(0);
+
+        TESTED = new CachingUserDataProvider(mockDataProvider, config, time::get, Runnable::run);
+    }
+
+    @Test
+    void getById_cached() {
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+
+        assertEquals(TESTED.getById(1L).block(), USER);
+        assertEquals(TESTED.getById(1L).block(), USER);
+
+        verify(mockDataProvider, times(1)).getById(1L);
+    }
+
+    @Test
+    void getById_projection() {
+        final Projection projection = Projection.of("name,email");
+        final User projected = new User(null, "Tomas", null, "hanusto@gmail.com", null);
+        when(mockDataProvider.getById(1L, projection)).thenReturn(Mono.just(projected));
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+
+        // projected user is not cached, cached user answers projection
+        assertEquals(TESTED.getById(1L, projection).block(), projected);
+        assertEquals(TESTED.getById(1L, Projection.of("posts.title")).block(), USER);
+        assertEquals(TESTED.getById(1L, projection).block(), USER);
+
+        verify(mockDataProvider, times(1)).getById(1L, projection);
+        verify(mockDataProvider, times(1)).getById(1L);
+    }
+
+    @Test
+    void invalidate() {
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+        TESTED.getById(1L).block();
+
+        TESTED.invalidate(1L);
+        TESTED.getById(1L).block();
+        TESTED.invalidateAll();
+
+        // verify, invalidated user is loaded again
+        verify(mockDataProvider, times(2)).getById(1L);
+        assertEquals(TESTED.size(), 0L);
+        assertEquals(TESTED.stats().missCount(), 2L);
+    }
+
+    @Test
+    void getPosts_window() {
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com",
+                Arrays.asList(new Post(1L, "First"), new Post(2L, "Second"), new Post(3L, "Third")));
+        when(mockDataProvider.getPosts(1L, 1L, 1)).thenReturn(Flux.just(new Post(2L, "Second")));
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(user));
+
+        // window of not cached user is fetched, window of cached user is taken from cache
+        assertEquals(TESTED.getPosts(1L, 1L, 1).collectList().block(), Collections.singletonList(new Post(2L, "Second")));
+        TESTED.getById(1L).block();
+        assertEquals(TESTED.getPosts(1L, 1L, 5).collectList().block(), Arrays.asList(new Post(2L, "Second"), new Post(3L, "Third")));
+
+        verify(mockDataProvider, times(1)).getPosts(1L, 1L, 1);
+    }
+
+    @Test
+    void getById_freshServedUntilRefresh() {
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(USER))
+                .thenReturn(Mono.just(USER_REFRESHED));
+
+        assertEquals(TESTED.getById(1L).block(), USER);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(TESTED.getById(Long.valueOf(1L)).block(), USER);
+        assertEquals(TESTED.getPosts(1L).collectList().block(), Collections.emptyList());
+
+        // fresh user is not served after it is due to refresh
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(TESTED.getById(1L).block(), USER);
+        assertEquals(TESTED.getById(1L).block(), USER_REFRESHED);
+        assertEquals(TESTED.getById(1L).block(), USER_REFRESHED);
+
+        verify(mockDataProvider, times(2)).getById(1L);
+    }
+
+    @Test
+    void getById_failureNotCached() {
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.error(new IllegalStateException("Upstream failure")))
+                .thenReturn(Mono.just(USER));
+
+        assertThrows(IllegalStateException.class, () -> TESTED.getById(1L).block());
+        assertEquals(TESTED.getById(1L).block(), USER);
+
+        verify(mockDataProvider, times(2)).getById(1L);
+    }
+
+    @Test
+    void getById_staleWhileRefresh() {
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(USER))
+                .thenReturn(Mono.just(USER_REFRESHED));
+
+        assertEquals(TESTED.getById(1L).block(), USER);
+
+        // stale value is served while it is refreshed
+        time.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        assertEquals(TESTED.getById(1L).block(), USER);
+        assertEquals(TESTED.getById(1L).block(), USER_REFRESHED);
+
+        verify(mockDataProvider, times(2)).getById(1L);
+    }
+
+    @Test
+    void getById_expired() {
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(USER))
+                .thenReturn(Mono.just(USER_REFRESHED));
+
+        assertEquals(TESTED.getById(1L).block(), USER);
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertEquals(TESTED.getById(1L).block(), USER_REFRESHED);
+    }
+
+    @Test
+    void getById_staleIfUnavailable() {
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(USER))
+                .thenReturn(Mono.error(new UnavailableException("Upstream is down")));
+        when(mockDataProvider.getById(2L)).thenReturn(Mono.error(new UnavailableException("Upstream is down")));
+
+        assertEquals(TESTED.getById(1L).block(), USER);
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertEquals(TESTED.getById(1L).block(), USER);
+        assertThrows(UnavailableException.class, () -> TESTED.getById(2L).block());
+    }
+
+    @Test
+    void getByIds_onlyMissesFetched() {
+        final User user2 = new User(2L, "John", "Doe", "john@doe.com", Collections.emptyList());
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+        when(mockDataProvider.getByIds(Collections.singletonList(2L))).thenReturn(Flux.just(user2));
+
+        TESTED.getById(1L).block();
+        final List<User> testedResult = TESTED.getByIds(Arrays.asList(1L, 2L))
+                                              .collectSortedList((u1, u2) -> u1.getId().compareTo(u2.getId()))
+                                              .block();
+
+        assertEquals(testedResult, Arrays.asList(USER, user2));
+        assertEquals(TESTED.getById(2L).block(), user2);
+        verify(mockDataProvider, times(0)).getById(2L);
+    }
+}
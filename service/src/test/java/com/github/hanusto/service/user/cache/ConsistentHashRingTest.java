@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link ConsistentHashRing}.
+ *
+ * @author Tomas Hanus
+ */
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES = Arrays.asList("http://a:8080", "http://b:8080", "http://c:8080");
+    private static final int IDS = 30_000;
+
+    @Test
+    void owner_balanced() {
+        final ConsistentHashRing tested = new ConsistentHashRing(NODES, 128);
+
+        final Map<String, Integer> owned = new HashMap<>();
+        for (long id = 1; id <= IDS; id++) {
+            owned.merge(tested.owner(id), 1, Integer::sum);
+        }
+
+        // verify, every node owns about third of IDs
+        assertEquals(owned.keySet(), new HashSet<>(NODES));
+        owned.values().forEach(count -> assertTrue("Owned " + count, count > IDS / 5 && count < IDS / 2));
+    }
+
+    @Test
+    void owner_nodeRemoved() {
+        final ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        final ConsistentHashRing tested = new ConsistentHashRing(NODES.subList(0, 2), 128);
+
+        // verify, only IDs of removed node change owner, the same nodes build the same ring
+        for (long id = 1; id <= IDS; id++) {
+            final String owner = ring.owner(id);
+            if (!owner.equals(NODES.get(2))) {
+                assertEquals(tested.owner(id), owner);
+            }
+        }
+        assertEquals(new ConsistentHashRing(Collections.singletonList(NODES.get(0)), 1).owner(42L), NODES.get(0));
+    }
+}
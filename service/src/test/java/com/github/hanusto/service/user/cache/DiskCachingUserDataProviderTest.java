@@ -0,0 +1,93 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Test suite for {@link DiskCachingUserDataProvider}.
+ *
+ * @author Tomas Hanus
+ */
+class DiskCachingUserDataProviderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path directory;
+    private DiskProfileCache.Config config;
+
+    @BeforeEach
+    void testedSetup() throws IOException {
+        directory = Files.createTempDirectory("disk-caching-provider");
+
+        config = new DiskProfileCache.Config();
+        config.setPath(directory.resolve("profiles.segment").toString());
+    }
+
+    @AfterEach
+    void testedCleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void getById_servedAfterRestart() {
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Arrays.asList(new Post(1L, "Title")));
+        final UserDataProvider mockDataProvider = mock(UserDataProvider.class);
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(user));
+
+        final DiskProfileCache cache = new DiskProfileCache(config);
+        assertEquals(tested(mockDataProvider, cache).getById(1L).block(), user);
+        cache.close();
+
+        final UserDataProvider restartedDataProvider = mock(UserDataProvider.class);
+        final DiskCachingUserDataProvider tested = tested(restartedDataProvider, new DiskProfileCache(config));
+
+        assertEquals(tested.getById(1L).block(), user);
+        assertEquals(tested.getPosts(1L).collectList().block(), user.getPosts());
+        assertEquals(tested.getByIds(Collections.singletonList(1L)).collectList().block(), Collections.singletonList(user));
+        verify(restartedDataProvider, never()).getById(1L);
+    }
+
+    private DiskCachingUserDataProvider tested(final UserDataProvider delegate, final DiskProfileCache cache) {
+        return new DiskCachingUserDataProvider(delegate, cache, objectMapper, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Test suite for {@link DiskProfileCache}.
+ *
+ * @author Tomas Hanus
+ */
+class DiskProfileCacheTest {
+
+    private static final byte[] PROFILE_1 = "{\"id\":1,\"name\":\"Tomas\"}".getBytes(UTF_8);
+    private static final byte[] PROFILE_2 = "{\"id\":2,\"name\":\"John\"}".getBytes(UTF_8);
+
+    private final AtomicLong time = new AtomicLong(1_000_000L);
+
+    private Path directory;
+    private DiskProfileCache.Config config;
+
+    @BeforeEach
+    void testedSetup() throws IOException {
+        directory = Files.createTempDirectory("disk-profile-cache");
+
+        config = new DiskProfileCache.Config();
+        config.setPath(directory.resolve("profiles.segment").toString());
+        config.setSegmentSize(DataSize.ofKilobytes(4));
+        config.setTtl(Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void testedCleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void get_put() {
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+
+        tested.put(1L, PROFILE_1);
+
+        assertArrayEquals(tested.get(1L), PROFILE_1);
+        assertNull(tested.get(2L));
+    }
+
+    @Test
+    void get_expired() {
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+        tested.put(1L, PROFILE_1);
+
+        time.addAndGet(TimeUnit.MINUTES.toMillis(11));
+
+        assertNull(tested.get(1L));
+    }
+
+    @Test
+    void get_reopened() {
+        final DiskProfileCache written = new DiskProfileCache(config, time::get);
+        written.put(1L, PROFILE_2);
+        written.put(1L, PROFILE_1);
+        written.put(2L, PROFILE_2);
+        written.close();
+
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+
+        assertArrayEquals(tested.get(1L), PROFILE_1);
+        assertArrayEquals(tested.get(2L), PROFILE_2);
+        assertEquals(tested.size(), 2);
+    }
+
+    @Test
+    void putLater() throws InterruptedException {
+        config.setWriteQueueSize(1);
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+        final CountDownLatch writing = new CountDownLatch(1);
+
+        // writer waits for lock with the first profile, the second one waits in queue, the third one is dropped
+        synchronized (tested) {
+            assertTrue(tested.putLater(1L, () -> {
+                writing.countDown();
+                return PROFILE_1;
+            }));
+            writing.await();
+            assertTrue(tested.putLater(2L, () -> PROFILE_2));
+            assertFalse(tested.putLater(3L, () -> PROFILE_1));
+        }
+        tested.close();
+
+        // verify, pending profiles are written on close
+        final DiskProfileCache reopened = new DiskProfileCache(config, time::get);
+        assertArrayEquals(reopened.get(1L), PROFILE_1);
+        assertArrayEquals(reopened.get(2L), PROFILE_2);
+        assertNull(reopened.get(3L));
+    }
+
+    @Test
+    void invalidate() {
+        final DiskProfileCache written = new DiskProfileCache(config, time::get);
+        written.put(1L, PROFILE_1);
+        written.put(2L, PROFILE_2);
+
+        written.invalidate(1L);
+        written.close();
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+
+        // verify, invalidated profile is not served after restart either, following records are kept
+        assertNull(written.get(1L));
+        assertNull(tested.get(1L));
+        assertArrayEquals(tested.get(2L), PROFILE_2);
+    }
+
+    @Test
+    void invalidateAll() {
+        final DiskProfileCache written = new DiskProfileCache(config, time::get);
+        written.put(1L, PROFILE_1);
+        written.put(2L, PROFILE_2);
+
+        written.invalidateAll();
+        written.put(2L, PROFILE_2);
+        written.close();
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+
+        assertNull(tested.get(1L));
+        assertArrayEquals(tested.get(2L), PROFILE_2);
+        assertEquals(tested.size(), 1);
+    }
+
+    @Test
+    void get_reopenedWithTornRecord() throws IOException {
+        final DiskProfileCache written = new DiskProfileCache(config, time::get);
+        written.put(1L, PROFILE_1);
+        written.put(2L, PROFILE_2);
+        written.close();
+
+        // damage the last byte of the second record
+        try (RandomAccessFile file = new RandomAccessFile(config.getPath(), "rw")) {
+            file.seek(written.usedBytes() - 1);
+            file.write('x');
+        }
+
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+
+        assertArrayEquals(tested.get(1L), PROFILE_1);
+        assertNull(tested.get(2L));
+
+        // torn record is overwritten
+        tested.put(3L, PROFILE_2);
+        assertArrayEquals(new DiskProfileCache(config, time::get).get(3L), PROFILE_2);
+    }
+
+    @Test
+    void put_compacted() {
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+        tested.put(2L, PROFILE_2);
+
+        // superseded records fill the segment many times over
+        for (int i = 0; i < 1000; i++) {
+            tested.put(1L, PROFILE_1);
+        }
+
+        assertArrayEquals(tested.get(1L), PROFILE_1);
+        assertArrayEquals(tested.get(2L), PROFILE_2);
+        assertEquals(tested.size(), 2);
+        assertArrayEquals(new DiskProfileCache(config, time::get).get(2L), PROFILE_2);
+    }
+
+    @Test
+    void put_expiredCompacted() {
+        final DiskProfileCache tested = new DiskProfileCache(config, time::get);
+        tested.put(2L, PROFILE_2);
+        time.addAndGet(TimeUnit.MINUTES.toMillis(11));
+
+        for (int i = 0; i < 1000; i++) {
+            tested.put(1L, PROFILE_1);
+        }
+
+        assertArrayEquals(tested.get(1L), PROFILE_1);
+        assertNull(tested.get(2L));
+        assertEquals(tested.size(), 1);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.github.hanusto.service.user.provider.model.Post;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.test.AbstractTest;
+
+/**
+ * Test suite for {@link EncodedProfileCache}.
+ *
+ * @author Tomas Hanus
+ */
+class EncodedProfileCacheTest extends AbstractTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void get_encodedOnce() {
+        final EncodedProfileCache tested = new EncodedProfileCache(objectMapper, new EncodedProfileCache.Config());
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+
+        final EncodedProfile testedResult = tested.get(user);
+
+        assertSame(testedResult, tested.get(user));
+        assertNotSame(testedResult, tested.get(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList())));
+        assertEqualsPayload("user-1.json", asString(testedResult));
+    }
+
+    @Test
+    void get_direct() {
+        final EncodedProfileCache.Config config = new EncodedProfileCache.Config();
+        config.setDirect(true);
+        final EncodedProfileCache tested = new EncodedProfileCache(objectMapper, config);
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+
+        final EncodedProfile testedResult = tested.get(user);
+
+        // buffer can be written repeatedly
+        assertEquals(asString(testedResult), asString(testedResult));
+        assertEqualsPayload("user-1.json", asString(testedResult));
+    }
+
+    @Test
+    void get_compressed() throws IOException {
+        final EncodedProfileCache tested = new EncodedProfileCache(objectMapper, new EncodedProfileCache.Config());
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", posts(50));
+        final EncodedProfile encoded = tested.get(user);
+
+        final EncodedProfile.Representation testedResult = encoded.representation(EncodedProfile.Coding.GZIP);
+
+        // compressed once and kept with profile, content is the same
+        assertSame(testedResult, encoded.representation(EncodedProfile.Coding.GZIP));
+        assertEquals(testedResult.coding(), EncodedProfile.Coding.GZIP);
+        assertTrue(testedResult.size() < encoded.size());
+        assertNotEquals(testedResult.etag(), encoded.etag());
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(asBytes(testedResult.asDataBuffer(new DefaultDataBufferFactory()))))) {
+            assertEquals(new String(StreamUtils.copyToByteArray(input), UTF_8), asString(encoded));
+        }
+        try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(asBytes(encoded.representation(EncodedProfile.Coding.DEFLATE)
+                                                                                               .asDataBuffer(new DefaultDataBufferFactory()))))) {
+            assertEquals(new String(StreamUtils.copyToByteArray(input), UTF_8), asString(encoded));
+        }
+    }
+
+    @Test
+    void get_compressedBelowThreshold() {
+        final EncodedProfileCache.Config config = new EncodedProfileCache.Config();
+        config.setCompressionMinSize(DataSize.ofKilobytes(100));
+        final EncodedProfileCache tested = new EncodedProfileCache(objectMapper, config);
+        final EncodedProfile encoded = tested.get(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", posts(50)));
+
+        final EncodedProfile.Representation testedResult = encoded.representation(EncodedProfile.Coding.GZIP);
+
+        assertEquals(testedResult.coding(), EncodedProfile.Coding.IDENTITY);
+        assertEquals(testedResult.etag(), encoded.etag());
+    }
+
+    private static List<Post> posts(final int count) {
+        final List<Post> posts = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            posts.add(new Post(i, "sunt aut facere repellat provident occaecati excepturi optio reprehenderit"));
+        }
+        return posts;
+    }
+
+    private static byte[] asBytes(final DataBuffer buffer) {
+        final byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return bytes;
+    }
+
+    private static String asString(final EncodedProfile encoded) {
+        return new String(asBytes(encoded.asDataBuffer(new DefaultDataBufferFactory())), UTF_8);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Test suite for {@link HotProfiles}.
+ *
+ * @author Tomas Hanus
+ */
+class HotProfilesTest {
+
+    private static final User USER = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+
+    private Path directory;
+    private HotProfiles.Config config;
+    private UserDataProvider mockDataProvider;
+
+    @BeforeEach
+    void testedSetup() throws IOException {
+        directory = Files.createTempDirectory("hot-profiles");
+
+        config = new HotProfiles.Config();
+        config.setPath(directory.resolve("hot-profiles.bin").toString());
+        config.setCapacity(2);
+        config.setSampleRate(1);
+        config.setWriteInterval(Duration.ofHours(1));
+        config.setWarmUpConcurrency(1);
+
+        mockDataProvider = mock(UserDataProvider.class);
+    }
+
+    @AfterEach
+    void testedCleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void warmUp_restart() {
+        final HotProfiles first = new HotProfiles(mockDataProvider, config);
+        assertTrue(first.isWarmedUp());
+        verify(mockDataProvider, never()).getById(anyLong());
+
+        first.record(3L);
+        first.record(1L);
+        first.record(1L);
+        first.record(1L);
+        first.record(2L);
+        first.close();
+
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+        when(mockDataProvider.getById(2L)).thenReturn(Mono.error(new NotFoundException("User not found")));
+
+        final HotProfiles tested = new HotProfiles(mockDataProvider, config);
+
+        // verify, only the hottest users are warmed up, the most requested first, failure is skipped
+        final InOrder inOrder = inOrder(mockDataProvider);
+        inOrder.verify(mockDataProvider).getById(1L);
+        inOrder.verify(mockDataProvider).getById(2L);
+        verify(mockDataProvider, never()).getById(3L);
+        assertTrue(tested.isWarmedUp());
+        assertEquals(tested.getWarmUpTotal(), 2);
+        assertEquals(tested.getWarmUpCompleted(), 2);
+        tested.close();
+    }
+
+    @Test
+    void warmUp_pending() {
+        final HotProfiles first = new HotProfiles(mockDataProvider, config);
+        first.record(1L);
+        first.close();
+
+        final MonoProcessor<User> user = MonoProcessor.create();
+        when(mockDataProvider.getById(1L)).thenReturn(user);
+
+        final HotProfiles tested = new HotProfiles(mockDataProvider, config);
+
+        // verify, it is not ready until warm-up finishes
+        assertFalse(tested.isWarmedUp());
+        assertEquals(tested.getWarmUpCompleted(), 0);
+
+        user.onNext(USER);
+
+        assertTrue(tested.isWarmedUp());
+        assertEquals(tested.getWarmUpCompleted(), 1);
+        tested.close();
+    }
+
+    @Test
+    void warmUp_timeout() {
+        final HotProfiles first = new HotProfiles(mockDataProvider, config);
+        first.record(1L);
+        first.close();
+
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.never());
+        config.setWarmUpTimeout(Duration.ofMillis(50));
+
+        final HotProfiles tested = new HotProfiles(mockDataProvider, config);
+
+        Mono.delay(Duration.ofMillis(200)).block();
+        assertTrue(tested.isWarmedUp());
+        assertEquals(tested.getWarmUpCompleted(), 0);
+        tested.close();
+    }
+
+    @Test
+    void record_sampled() throws IOException {
+        config.setSampleRate(4);
+        final HotProfiles tested = new HotProfiles(mockDataProvider, config);
+
+        for (int i = 0; i < 4000; i++) {
+            tested.record(1L);
+        }
+        tested.close();
+
+        // verify, sampled requests are recorded with weight of sample rate, so count is kept in scale
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(directory.resolve("hot-profiles.bin")))) {
+            input.readInt();
+            assertEquals(input.readInt(), 1);
+            assertEquals(input.readLong(), 1L);
+            final long count = input.readLong();
+            assertEquals(count % 4, 0L);
+            assertTrue("Count out of scale: " + count, count > 3200 && count < 4800);
+        }
+    }
+
+    @Test
+    void warmUp_corrupted() throws IOException {
+        Files.write(directory.resolve("hot-profiles.bin"), new byte[]{1, 2, 3});
+
+        final HotProfiles tested = new HotProfiles(mockDataProvider, config);
+
+        assertTrue(tested.isWarmedUp());
+        assertEquals(tested.getWarmUpTotal(), 0);
+        tested.close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link LongKeyedCache}.
+ *
+ * @author Tomas Hanus
+ */
+class LongKeyedCacheTest {
+
+    private static final long TTL = 1_000;
+
+    private final AtomicLong time = new AtomicLong();
+
+    @Test
+    void get_put() {
+        final LongKeyedCache<String> tested = new LongKeyedCache<>(64, time::get);
+
+        tested.put(1L, "one", TTL);
+        tested.put(2L, "two", TTL);
+        tested.put(1L, "uno", TTL);
+
+        assertEquals(tested.get(1L), "uno");
+        assertEquals(tested.get(2L), "two");
+        assertNull(tested.get(3L));
+        assertEquals(tested.size(), 2);
+    }
+
+    @Test
+    void get_expired() {
+        final LongKeyedCache<String> tested = new LongKeyedCache<>(64, time::get);
+        tested.put(1L, "one", TTL);
+
+        time.addAndGet(TTL);
+
+        assertNull(tested.get(1L));
+        assertEquals(tested.size(), 0);
+    }
+
+    @Test
+    void get_removed() {
+        final LongKeyedCache<String> tested = new LongKeyedCache<>(64, time::get);
+        tested.put(1L, "one", TTL);
+        tested.put(2L, "two", TTL);
+
+        tested.remove(1L);
+        assertNull(tested.get(1L));
+
+        tested.clear();
+        assertNull(tested.get(2L));
+        assertEquals(tested.size(), 0);
+    }
+
+    @Test
+    void put_bounded() {
+        final LongKeyedCache<Long> tested = new LongKeyedCache<>(100, time::get);
+
+        for (long key = 0; key < 10_000; key++) {
+            tested.put(key, key, TTL);
+        }
+
+        assertEquals(tested.capacity(), 64);
+        assertEquals(tested.size(), 64);
+    }
+
+    @Test
+    void put_referencedKept() {
+        // single bucket, so every key competes for the same 8 slots
+        final LongKeyedCache<Long> tested = new LongKeyedCache<>(8, time::get);
+        for (long key = 0; key < 8; key++) {
+            tested.put(key, key, TTL);
+        }
+
+        tested.get(3L);
+        for (long key = 100; key < 107; key++) {
+            tested.put(key, key, TTL);
+        }
+
+        assertEquals(tested.get(3L), Long.valueOf(3L));
+        assertTrue(tested.size() <= 8);
+    }
+}
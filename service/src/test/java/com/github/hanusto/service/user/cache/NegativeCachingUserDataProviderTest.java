@@ -0,0 +1,109 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+
+/**
+ * Test suite for {@link NegativeCachingUserDataProvider}.
+ *
+ * @author Tomas Hanus
+ */
+class NegativeCachingUserDataProviderTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UserDataProvider mockDataProvider;
+    private NegativeCachingUserDataProvider TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        mockDataProvider = mock(UserDataProvider.class);
+
+        final NegativeCachingUserDataProvider.Config config = new NegativeCachingUserDataProvider.Config();
+        config.setMaximumSize(16);
+        config.setTtl(Duration.ofSeconds(60));
+
+        TESTED = new NegativeCachingUserDataProvider(mockDataProvider, config, meterRegistry, time::get);
+    }
+
+    @Test
+    void getById_missingRemembered() {
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.error(new NotFoundException("User not found")));
+
+        assertThrows(NotFoundException.class, () -> TESTED.getById(1L).block());
+        assertThrows(NotFoundException.class, () -> TESTED.getById(1L).block());
+
+        verify(mockDataProvider, times(1)).getById(1L);
+        assertEquals(1, hits(), 0);
+    }
+
+    @Test
+    void getById_missingExpired() {
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.error(new NotFoundException("User not found")))
+                .thenReturn(Mono.just(user));
+
+        assertThrows(NotFoundException.class, () -> TESTED.getById(1L).block());
+        time.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertEquals(TESTED.getById(1L).block(), user);
+        assertEquals(0, hits(), 0);
+    }
+
+    @Test
+    void getByIds_missingRemembered() {
+        final User user = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        when(mockDataProvider.getByIds(Arrays.asList(1L, 2L))).thenReturn(Flux.just(user));
+        when(mockDataProvider.getByIds(Collections.singletonList(1L))).thenReturn(Flux.just(user));
+
+        assertEquals(TESTED.getByIds(Arrays.asList(1L, 2L)).collectList().block(), Collections.singletonList(user));
+        final List<User> testedResult = TESTED.getByIds(Arrays.asList(1L, 2L)).collectList().block();
+
+        assertEquals(testedResult, Collections.singletonList(user));
+        assertThrows(NotFoundException.class, () -> TESTED.getById(2L).block());
+        assertEquals(2, hits(), 0);
+    }
+
+    private double hits() {
+        return meterRegistry.get(NegativeCachingUserDataProvider.METRIC_NAME).tag("result", "hit").counter().count();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.route.PeerRouterConfig;
+import com.github.hanusto.service.user.test.AbstractFunctionalTest;
+
+/**
+ * Test suite for {@link PeerCachingUserDataProvider}, WireMock acts as the other peer, unless two real peers are started.
+ *
+ * @author Tomas Hanus
+ */
+class PeerCachingUserDataProviderTest extends AbstractFunctionalTest {
+
+    private static final String SELF = "http://localhost:1";
+    private static final User USER = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+
+    private UserDataProvider mockDataProvider;
+    private PeerCachingUserDataProvider TESTED;
+    private long ownedId;
+    private long peerId;
+
+    @BeforeEach
+    void testedSetup() {
+        WireMock.reset();
+        mockDataProvider = mock(UserDataProvider.class);
+
+        final PeerCachingUserDataProvider.Config config = new PeerCachingUserDataProvider.Config();
+        config.setSelf(SELF);
+        config.setPeers(Arrays.asList(SELF, getWireMockUrl() + "/"));
+        // first request of client may be slow, peer must not be considered failed
+        config.setTimeout(Duration.ofSeconds(5));
+        TESTED = new PeerCachingUserDataProvider(mockDataProvider, config, new SimpleMeterRegistry());
+
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(SELF, getWireMockUrl()), config.getVirtualNodes());
+        ownedId = LongStream.rangeClosed(1, 100).filter(id -> ring.owner(id).equals(SELF)).findFirst().getAsLong();
+        peerId = LongStream.rangeClosed(1, 100).filter(id -> !ring.owner(id).equals(SELF)).findFirst().getAsLong();
+    }
+
+    @Test
+    void getById_owned() {
+        when(mockDataProvider.getById(ownedId)).thenReturn(Mono.just(USER));
+
+        assertEquals(TESTED.getById(ownedId).block(), USER);
+    }
+
+    @Test
+    void getById_peer() {
+        WireMock.stubFor(get(urlEqualTo("/peer/profiles/" + peerId))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("user-1.json"))));
+
+        assertEquals(TESTED.getById(peerId).block(), USER);
+
+        verify(mockDataProvider, never()).getById(peerId);
+    }
+
+    @Test
+    void getById_peerNotFound() {
+        WireMock.stubFor(get(urlEqualTo("/peer/profiles/" + peerId))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        assertThrows(NotFoundException.class, () -> TESTED.getById(peerId).block());
+
+        verify(mockDataProvider, never()).getById(peerId);
+    }
+
+    @Test
+    void getById_peerFailed() {
+        WireMock.stubFor(get(urlEqualTo("/peer/profiles/" + peerId))
+                .willReturn(aResponse()
+                        .withStatus(503)));
+        when(mockDataProvider.getById(peerId)).thenReturn(Mono.just(USER));
+
+        // verify, user is loaded by this instance
+        assertEquals(TESTED.getById(peerId).block(), USER);
+    }
+
+    @Test
+    void getByIds() {
+        WireMock.stubFor(get(urlEqualTo("/peer/profiles?id=" + peerId))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("users-1.json"))));
+        when(mockDataProvider.getByIds(Collections.singletonList(ownedId))).thenReturn(Flux.just(USER));
+
+        final List<User> testedResult = TESTED.getByIds(Arrays.asList(ownedId, peerId)).collectList().block();
+
+        // verify, every peer is asked for its users
+        assertEquals(testedResult, Arrays.asList(USER, USER));
+        verify(mockDataProvider, never()).getByIds(Collections.singletonList(peerId));
+        verify(mockDataProvider, never()).getById(any(Long.class));
+    }
+
+    @Test
+    void getById_disagreeingPeers() {
+        final AtomicReference<HttpHandler> firstHandler = new AtomicReference<>();
+        final AtomicReference<HttpHandler> secondHandler = new AtomicReference<>();
+        final DisposableServer firstServer = start(firstHandler);
+        final DisposableServer secondServer = start(secondHandler);
+        try {
+            final List<String> peers = Arrays.asList(url(firstServer), url(secondServer));
+            // peers have different count of virtual nodes, so they do not agree on owner of some IDs
+            final ConsistentHashRing firstRing = new ConsistentHashRing(peers, 128);
+            final ConsistentHashRing secondRing = new ConsistentHashRing(peers, 1);
+            final long id = LongStream.rangeClosed(1, 1000)
+                                      .filter(i -> firstRing.owner(i).equals(peers.get(1)) && secondRing.owner(i).equals(peers.get(0)))
+                                      .findFirst().getAsLong();
+
+            final UserDataProvider firstLocal = mock(UserDataProvider.class);
+            final UserDataProvider secondLocal = mock(UserDataProvider.class);
+            final UserDataProvider first = peer(firstHandler, firstLocal, peers.get(0), peers, 128);
+            peer(secondHandler, secondLocal, peers.get(1), peers, 1);
+            when(secondLocal.getById(id)).thenReturn(Mono.just(USER));
+            when(secondLocal.getByIds(Collections.singletonList(id))).thenReturn(Flux.just(USER));
+
+            assertEquals(first.getById(id).block(), USER);
+            assertEquals(first.getByIds(Collections.singletonList(id)).collectList().block(), Collections.singletonList(USER));
+
+            // verify, owner by the first peer serves the user by its local tiers, request is not forwarded back
+            verify(secondLocal).getById(id);
+            verify(firstLocal, never()).getById(id);
+            verify(firstLocal, never()).getByIds(any());
+        } finally {
+            firstServer.disposeNow();
+            secondServer.disposeNow();
+        }
+    }
+
+    /**
+     * Creates peer with cache in memory, like the service does, and exposes its route by handler.
+     */
+    private static UserDataProvider peer(final AtomicReference<HttpHandler> handler, final UserDataProvider local, final String self,
+                                         final List<String> peers, final int virtualNodes) {
+        final PeerCachingUserDataProvider.Config config = new PeerCachingUserDataProvider.Config();
+        config.setSelf(self);
+        config.setPeers(peers);
+        config.setVirtualNodes(virtualNodes);
+        config.setTimeout(Duration.ofSeconds(5));
+
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final UserDataProvider provider = new CachingUserDataProvider(new PeerCachingUserDataProvider(local, config, meterRegistry),
+                new CachingUserDataProvider.Config(), meterRegistry);
+        handler.set(RouterFunctions.toHttpHandler(new PeerRouterConfig(provider).peerProfileRoute()));
+        return provider;
+    }
+
+    private static DisposableServer start(final AtomicReference<HttpHandler> handler) {
+        return HttpServer.create()
+                         .host("localhost")
+                         .port(0)
+                         .handle(new ReactorHttpHandlerAdapter((request, response) -> handler.get().handle(request, response)))
+                         .bindNow();
+    }
+
+    private static String url(final DisposableServer server) {
+        return "http://localhost:" + server.port();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
+import com.github.hanusto.service.user.provider.model.exception.UnavailableException;
+
+/**
+ * Test suite for {@link ProfileCacheAdmin}.
+ *
+ * @author Tomas Hanus
+ */
+class ProfileCacheAdminTest {
+
+    private static final User USER = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+
+    private UserDataProvider mockDataProvider;
+    private CachingUserDataProvider cache;
+    private ProfileCacheAdmin TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        mockDataProvider = mock(UserDataProvider.class);
+        cache = new CachingUserDataProvider(mockDataProvider, new CachingUserDataProvider.Config(), () -> 0L, Runnable::run);
+
+        final ProfileCacheAdmin.Config config = new ProfileCacheAdmin.Config();
+        config.setWarmUpConcurrency(2);
+
+        TESTED = new ProfileCacheAdmin(cache, cache, null, config);
+    }
+
+    @Test
+    void warmUp() {
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+        when(mockDataProvider.getById(2L)).thenReturn(Mono.empty());
+        when(mockDataProvider.getById(3L)).thenReturn(Mono.error(new NotFoundException("User not found")));
+        when(mockDataProvider.getById(4L)).thenReturn(Mono.error(new UnavailableException("Upstream is unavailable")));
+
+        final ProfileCacheAdmin.WarmUp tested = TESTED.warmUp(Arrays.asList(1L, 2L, 3L, 4L, 1L)).get();
+
+        // verify, duplicate is loaded once and loaded user is cached
+        assertTrue(tested.isDone());
+        assertEquals(tested.getTotal(), 4);
+        assertEquals(tested.getLoaded(), 1);
+        assertEquals(tested.getMissing(), 2);
+        assertEquals(tested.getFailed(), 1);
+        assertEquals(TESTED.stats().getSize(), 1L);
+        assertEquals(TESTED.getWarmUp(), Optional.of(tested));
+    }
+
+    @Test
+    void warmUp_running() {
+        final MonoProcessor<User> pending = MonoProcessor.create();
+        when(mockDataProvider.getById(1L)).thenReturn(pending);
+
+        final ProfileCacheAdmin.WarmUp running = TESTED.warmUp(Collections.singletonList(1L)).get();
+
+        // verify, only one warm-up runs at a time
+        assertFalse(TESTED.warmUp(Collections.singletonList(1L)).isPresent());
+        pending.onNext(USER);
+        assertTrue(running.isDone());
+        assertTrue(TESTED.warmUp(Collections.singletonList(1L)).isPresent());
+    }
+
+    @Test
+    void invalidate() {
+        when(mockDataProvider.getById(1L)).thenReturn(Mono.just(USER));
+        cache.getById(1L).block();
+
+        TESTED.invalidate(Collections.singletonList(1L));
+
+        // verify, user is invalidated by every tier down to upstream
+        assertEquals(TESTED.stats().getSize(), 0L);
+        assertEquals(TESTED.stats().getLoadSuccessCount(), 1L);
+        verify(mockDataProvider).invalidate(1L);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link SpaceSavingSketch}.
+ *
+ * @author Tomas Hanus
+ */
+class SpaceSavingSketchTest {
+
+    @Test
+    void top() {
+        final SpaceSavingSketch tested = new SpaceSavingSketch(3);
+
+        // frequent IDs interleaved with unique IDs that exceed capacity
+        for (int i = 0; i < 100; i++) {
+            tested.record(1L, 3);
+            tested.record(2L, 2);
+            tested.record(1000L + i, 1);
+        }
+
+        // verify, frequent IDs are kept, count of the last unique ID is overestimated by counts of replaced ones
+        assertEquals(tested.top(), Arrays.asList(
+                new SpaceSavingSketch.Entry(1L, 300L),
+                new SpaceSavingSketch.Entry(2L, 200L),
+                new SpaceSavingSketch.Entry(1099L, 100L)));
+    }
+
+    @Test
+    void record_weight() {
+        final SpaceSavingSketch tested = new SpaceSavingSketch(10);
+
+        LongStream.rangeClosed(1, 5).forEach(id -> tested.record(id, id * 10));
+        tested.record(1L, 100);
+
+        assertEquals(tested.top(), Arrays.asList(
+                new SpaceSavingSketch.Entry(1L, 110L),
+                new SpaceSavingSketch.Entry(5L, 50L),
+                new SpaceSavingSketch.Entry(4L, 40L),
+                new SpaceSavingSketch.Entry(3L, 30L),
+                new SpaceSavingSketch.Entry(2L, 20L)));
+    }
+
+    @Test
+    void record_replacements() {
+        final SpaceSavingSketch tested = new SpaceSavingSketch(64);
+        final Random random = new Random(42);
+
+        // the frequent ID is interleaved with IDs that keep replacing each other, so the table of positions churns
+        for (int i = 0; i < 100_000; i++) {
+            tested.record(i % 2 == 0 ? 7L : random.nextInt(10_000), 1);
+        }
+
+        // verify, every ID is monitored once and every occurrence is counted by exactly one counter
+        final List<SpaceSavingSketch.Entry> top = tested.top();
+        assertEquals(top.size(), 64);
+        assertEquals(top.stream().mapToLong(SpaceSavingSketch.Entry::getId).distinct().count(), 64L);
+        assertEquals(top.stream().mapToLong(SpaceSavingSketch.Entry::getCount).sum(), 100_000L);
+        assertEquals(top.get(0).getId(), 7L);
+    }
+
+    @Test
+    void decay() {
+        final SpaceSavingSketch tested = new SpaceSavingSketch(2);
+        tested.record(1L, 8);
+        tested.record(2L, 3);
+
+        tested.decay();
+        tested.record(3L, 1);
+
+        // verify, the least frequent ID is replaced by the new one
+        assertEquals(tested.top(), Arrays.asList(
+                new SpaceSavingSketch.Entry(1L, 4L),
+                new SpaceSavingSketch.Entry(3L, 2L)));
+    }
+}
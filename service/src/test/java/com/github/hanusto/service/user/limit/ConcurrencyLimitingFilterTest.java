@@ -0,0 +1,138 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import com.github.hanusto.service.user.provider.Projection;
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+
+/**
+ * Test suite for {@link ConcurrencyLimitingFilter}.
+ *
+ * @author Tomas Hanus
+ */
+@ExtendWith({
+        SpringExtension.class
+})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "hanusto.user-service.concurrency-limit.initialLimit=1",
+        "hanusto.user-service.concurrency-limit.minLimit=1",
+        "hanusto.user-service.concurrency-limit.maxLimit=1",
+        "hanusto.user-service.concurrency-limit.retryAfter=2s"
+})
+class ConcurrencyLimitingFilterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private UserDataProvider mockDataProvider;
+
+    @Test
+    void filter_limitReached() {
+        final User data = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        final MonoProcessor<User> pending = MonoProcessor.create();
+        when(mockDataProvider.getById(1L))
+                .thenReturn(pending, Mono.just(data));
+        when(mockDataProvider.getById(eq(1L), any(Projection.class)))
+                .thenReturn(Mono.just(data));
+        when(mockDataProvider.getPosts(1L))
+                .thenReturn(Flux.empty());
+
+        // saturate limit by request that is not responded yet
+        final Mono<ClientResponse> saturating = WebClient.create("http://localhost:" + port)
+                                                         .get().uri("/profiles/1")
+                                                         .accept(MediaType.APPLICATION_JSON)
+                                                         .exchange()
+                                                         .cache();
+        saturating.subscribe();
+        awaitInFlight(1);
+
+        webTestClient
+                .get().uri("/profiles/2")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2");
+
+        // other routes are not limited
+        webTestClient
+                .get().uri("/profiles/1/posts")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk();
+
+        // verify permit is released when response is written
+        pending.onNext(data);
+        final ClientResponse saturatingResponse = saturating.block(TIMEOUT);
+        assertEquals(saturatingResponse.statusCode(), HttpStatus.OK);
+        saturatingResponse.bodyToMono(String.class).block(TIMEOUT);
+        awaitInFlight(0);
+
+        webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertEquals(meterRegistry.get("user.profiles.concurrency.rejected").counter().count(), 1, 0);
+    }
+
+    private void awaitInFlight(final int expected) {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (meterRegistry.get("user.profiles.concurrency.in-flight").gauge().value() != expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Requests in flight did not reach " + expected);
+            }
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link GradientConcurrencyLimit}.
+ *
+ * @author Tomas Hanus
+ */
+class GradientConcurrencyLimitTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private GradientConcurrencyLimit TESTED;
+
+    @BeforeEach
+    void testedSetup() {
+        final ConcurrencyLimitingFilter.Config config = new ConcurrencyLimitingFilter.Config();
+        config.setInitialLimit(20);
+        config.setMinLimit(5);
+        config.setMaxLimit(100);
+
+        TESTED = new GradientConcurrencyLimit(config);
+    }
+
+    @Test
+    void tryAcquire_limitReached() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(TESTED.tryAcquire());
+        }
+        assertFalse(TESTED.tryAcquire());
+
+        TESTED.release(LATENCY, false);
+        assertTrue(TESTED.tryAcquire());
+        assertEquals(TESTED.getInFlight(), 20);
+    }
+
+    @Test
+    void release_stableLatencyGrowsLimit() {
+        saturate(10, LATENCY);
+
+        assertTrue(TESTED.getLimit() > 20);
+    }
+
+    @Test
+    void release_risingLatencyShrinksLimit() {
+        saturate(10, LATENCY);
+        final int limit = TESTED.getLimit();
+
+        saturate(10, 4 * LATENCY);
+
+        assertTrue(TESTED.getLimit() < limit);
+    }
+
+    @Test
+    void release_unusedLimitNotGrown() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(TESTED.tryAcquire());
+            TESTED.release(LATENCY, true);
+        }
+
+        assertEquals(TESTED.getLimit(), 20);
+    }
+
+    /**
+     * Fills the limit and releases all requests with given latency, repeatedly.
+     */
+    private void saturate(final int rounds, final long latency) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (TESTED.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                TESTED.release(latency, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.hanusto.service.user.cache.EncodedProfile.Coding;
+
+/**
+ * Test suite for {@link AcceptEncoding}.
+ *
+ * @author Tomas Hanus
+ */
+class AcceptEncodingTest {
+
+    @Test
+    void preferred() {
+        assertEquals(AcceptEncoding.preferred(Collections.emptyList()), Coding.IDENTITY);
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("gzip, deflate, br")), Coding.GZIP);
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("deflate")), Coding.DEFLATE);
+        assertEquals(AcceptEncoding.preferred(Arrays.asList("gzip;q=0.5", "DEFLATE; q=0.8")), Coding.DEFLATE);
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("br, identity")), Coding.IDENTITY);
+    }
+
+    @Test
+    void preferred_notAcceptable() {
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("gzip;q=0, deflate;q=0")), Coding.IDENTITY);
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("*;q=0.1, gzip;q=0")), Coding.DEFLATE);
+        assertEquals(AcceptEncoding.preferred(Collections.singletonList("gzip;q=x")), Coding.IDENTITY);
+    }
+}
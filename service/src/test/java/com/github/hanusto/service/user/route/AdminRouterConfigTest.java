@@ -0,0 +1,116 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.User;
+import com.github.hanusto.service.user.test.AbstractTest;
+
+/**
+ * Test suite for {@link AdminRouterConfig}.
+ *
+ * @author Tomas Hanus
+ */
+@ExtendWith({
+        SpringExtension.class
+})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "hanusto.user-service.admin.enabled=true")
+class AdminRouterConfigTest extends AbstractTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private UserDataProvider mockDataProvider;
+
+    @Test
+    void cacheAdminRoute_warmUp() {
+        final MonoProcessor<User> pending = MonoProcessor.create();
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList())));
+        when(mockDataProvider.getById(2L))
+                .thenReturn(pending);
+
+        webTestClient
+                .post().uri("/admin/cache/warm-up")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("[1,2]")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().valueEquals("Location", "/admin/cache/warm-up")
+                .expectBody().jsonPath("$.total").isEqualTo(2);
+        webTestClient
+                .post().uri("/admin/cache/warm-up")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("[3]")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        // verify, user 2 is missing
+        pending.onComplete();
+        webTestClient
+                .get().uri("/admin/cache/warm-up")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.done").isEqualTo(true)
+                .jsonPath("$.loaded").isEqualTo(1)
+                .jsonPath("$.missing").isEqualTo(1)
+                .jsonPath("$.failed").isEqualTo(0);
+    }
+
+    @Test
+    void cacheAdminRoute_invalidate() {
+        webTestClient
+                .get().uri("/admin/cache")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.hitRatio").exists();
+        webTestClient
+                .delete().uri("/admin/cache/profiles/1")
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient
+                .delete().uri("/admin/cache/profiles?id=1,2")
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient
+                .delete().uri("/admin/cache/profiles")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient
+                .delete().uri("/admin/cache")
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link PostsCursor}.
+ *
+ * @author Tomas Hanus
+ */
+class PostsCursorTest {
+
+    @Test
+    void decode() {
+        assertEquals(PostsCursor.decode(PostsCursor.encode(0)), 0);
+        assertEquals(PostsCursor.decode(PostsCursor.encode(1234)), 1234);
+    }
+
+    @Test
+    void decode_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> PostsCursor.decode("invalid"));
+        assertThrows(IllegalArgumentException.class, () -> PostsCursor.decode("%%%"));
+        assertThrows(IllegalArgumentException.class, () -> PostsCursor.decode(PostsCursor.encode(-1)));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.github.hanusto.service.user.test.load.AbstractLoadTest;
+import com.github.hanusto.service.user.test.load.LoadGenerator;
+import com.github.hanusto.service.user.test.load.LoadProfile;
+import com.github.hanusto.service.user.test.load.LoadReport;
+import com.github.hanusto.service.user.test.load.Slo;
+
+/**
+ * Load test of {@code /profiles/{id}} route of packaged service against stubbed upstream,
+ * run by {@code mvn verify -P load-test}.
+ * <p>
+ * Load and objectives can be overridden by system properties {@code load.*} and {@code slo.*},
+ * see {@link LoadProfile} and {@link Slo}.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+class ProfileLoadTest extends AbstractLoadTest {
+
+    private static final String UPSTREAM_PATH = "/" + ProfileLoadTest.class.getSimpleName() + "/";
+
+    /**
+     * Launches service pointed to stubbed upstream.
+     */
+    @BeforeAll
+    static void serviceSetup() throws IOException, InterruptedException {
+        startService("--hanusto.user-service.data-provider.baseUrl=" + getWireMockUrl() + UPSTREAM_PATH);
+    }
+
+    @Test
+    void profileRoute() throws InterruptedException {
+        final LoadProfile profile = new LoadProfile().withSystemProperties();
+        stubUpstream(UPSTREAM_PATH, profile);
+
+        final LoadReport testedResult = new LoadGenerator(profile).run(id -> getTargetUrl() + "/profiles/" + id);
+
+        // verification
+        testedResult.assertMeets(new Slo().withSystemProperties());
+    }
+}
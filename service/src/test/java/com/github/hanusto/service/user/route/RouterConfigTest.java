@@ -16,22 +16,43 @@
 
 package com.github.hanusto.service.user.route;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.reactive.function.server.ServerRequest;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
+import com.github.hanusto.service.user.provider.Projection;
 import com.github.hanusto.service.user.provider.UserDataProvider;
+import com.github.hanusto.service.user.provider.model.Post;
 import com.github.hanusto.service.user.provider.model.User;
 import com.github.hanusto.service.user.provider.model.exception.NotFoundException;
 import com.github.hanusto.service.user.test.AbstractTest;
@@ -50,12 +71,15 @@ class RouterConfigTest extends AbstractTest {
     @Autowired
     private WebTestClient webTestClient;
 
+    @LocalServerPort
+    private int port;
+
     @MockBean
     private UserDataProvider mockDataProvider;
 
     @Test
     void userProfileRoute() {
-        final User data = new User("Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        final User data = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
         when(mockDataProvider.getById(1L))
                 .thenReturn(Mono.just(data));
 
@@ -64,11 +88,145 @@ class RouterConfigTest extends AbstractTest {
                 .accept(MediaType.APPLICATION_JSON_UTF8)
                 .exchange()
                 .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
                 .returnResult(String.class)
                 .getResponseBody().blockFirst();
 
-        // verify
+        // verify, ID of user is internal, it is not part of profile
         assertEqualsPayload("user-profile-1_response.json", testedResponse);
+        assertEquals(testedResponse, "{\"name\":\"Tomas\",\"username\":\"Hanus\",\"email\":\"hanusto@gmail.com\",\"posts\":[]}");
+    }
+
+    @Test
+    void userProfileRoute_notModified() {
+        final User data = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(data));
+
+        final String etag = webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+
+        // verify, strong ETag is matched weakly too, other ETags are not matched
+        assertTrue(etag.startsWith("\""));
+        webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .ifNoneMatch("\"other\"", etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody().isEmpty();
+        webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .ifNoneMatch("W/" + etag)
+                .exchange()
+                .expectStatus().isNotModified();
+        webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .ifNoneMatch("\"other\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+    }
+
+    @Test
+    void userProfileRoute_compressed() throws IOException {
+        final List<Post> posts = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            posts.add(new Post(i, "Post " + i));
+        }
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", posts)));
+
+        // default client decompresses responses, so it would not see the response as it is
+        final byte[] testedResponse = WebTestClient
+                .bindToServer(new ReactorClientHttpConnector(HttpClient.create()))
+                .baseUrl("http://localhost:" + port)
+                .build()
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        // verify
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(testedResponse))) {
+            final String json = new String(StreamUtils.copyToByteArray(input), StandardCharsets.UTF_8);
+            assertTrue(json.startsWith("{\"name\":\"Tomas\""));
+            assertTrue(json.endsWith("{\"id\":50,\"title\":\"Post 50\"}]}"));
+        }
+    }
+
+    @Test
+    void userProfileRoute_projection() {
+        final User data = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com",
+                Arrays.asList(new Post(1L, "First post"), new Post(2L, "Second post")));
+        when(mockDataProvider.getById(eq(1L), any(Projection.class)))
+                .thenReturn(Mono.just(data));
+
+        final String testedResponse = webTestClient
+                .get().uri("/profiles/1?fields=email,name,posts.title")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // verify, fields are in order of complete profile
+        assertEquals(testedResponse, "{\"name\":\"Tomas\",\"email\":\"hanusto@gmail.com\","
+                + "\"posts\":[{\"title\":\"First post\"},{\"title\":\"Second post\"}]}");
+        webTestClient
+                .get().uri("/profiles/1?fields=name,phone")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void userProfileRoute_postsWindow() {
+        when(mockDataProvider.getById(eq(1L), any(Projection.class)))
+                .thenReturn(Mono.just(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", null)));
+        when(mockDataProvider.getPosts(1L, 0L, 3))
+                .thenReturn(Flux.just(new Post(1L, "First post"), new Post(2L, "Second post"), new Post(3L, "Third post")));
+        when(mockDataProvider.getPosts(1L, 2L, 3))
+                .thenReturn(Flux.just(new Post(3L, "Third post")));
+
+        final EntityExchangeResult<String> first = webTestClient
+                .get().uri("/profiles/1?fields=name,posts&postsLimit=2")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult();
+        final String next = first.getResponseHeaders().getFirst(HttpHeaders.LINK);
+
+        // verify, link to the next window keeps other params
+        assertEquals(first.getResponseBody(),
+                "{\"name\":\"Tomas\",\"posts\":[{\"id\":1,\"title\":\"First post\"},{\"id\":2,\"title\":\"Second post\"}]}");
+        assertTrue(next.matches("</profiles/1\\?fields=name,posts&postsLimit=2&cursor=[\\w-]+>; rel=\"next\""));
+        webTestClient
+                .get().uri(next.substring(1, next.indexOf('>')))
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.LINK)
+                .expectBody(String.class).isEqualTo("{\"name\":\"Tomas\",\"posts\":[{\"id\":3,\"title\":\"Third post\"}]}");
+        webTestClient
+                .get().uri("/profiles/1?postsLimit=2&cursor=invalid")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isBadRequest();
     }
 
     @Test
@@ -80,11 +238,88 @@ class RouterConfigTest extends AbstractTest {
                 .get().uri("/profiles/1")
                 .accept(MediaType.APPLICATION_JSON_UTF8)
                 .exchange()
-                .expectStatus().isBadRequest()
+                .expectStatus().isNotFound()
                 .returnResult(String.class)
                 .getResponseBody().blockFirst();
 
         // verify
         assertEqualsPayload("user-profile-1_response-error.json", testedResponse);
     }
-}
\ No newline at end of file
+
+    @Test
+    void userProfilesRoute() {
+        final User data1 = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        final User data2 = new User(2L, "John", "Doe", "john@doe.com", Collections.emptyList());
+        when(mockDataProvider.getByIds(Arrays.asList(1L, 2L)))
+                .thenReturn(Flux.just(data1, data2));
+
+        final String testedResponse = webTestClient
+                .get().uri("/profiles?id=1&id=2")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // verify
+        assertEqualsPayload("user-profiles-1-2_response.json", testedResponse);
+    }
+
+    @Test
+    void userPostsRoute() {
+        when(mockDataProvider.getById(eq(1L), any(Projection.class)))
+                .thenReturn(Mono.just(new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList())));
+        when(mockDataProvider.getPosts(1L))
+                .thenReturn(Flux.just(new Post(1L, "First post"), new Post(2L, "Second post")));
+
+        final String testedResponse = webTestClient
+                .get().uri("/profiles/1/posts")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_STREAM_JSON)
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // verify
+        assertEquals("{\"id\":1,\"title\":\"First post\"}\n{\"id\":2,\"title\":\"Second post\"}\n", testedResponse);
+    }
+
+    @Test
+    void userPostsRoute_notFound() {
+        when(mockDataProvider.getById(eq(1L), any(Projection.class)))
+                .thenReturn(Mono.error(new NotFoundException("User not found")));
+        when(mockDataProvider.getPosts(1L))
+                .thenReturn(Flux.empty());
+
+        // execute & verify
+        webTestClient
+                .get().uri("/profiles/1/posts")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void prometheusEndpoint() {
+        final User data = new User(1L, "Tomas", "Hanus", "hanusto@gmail.com", Collections.emptyList());
+        when(mockDataProvider.getById(1L))
+                .thenReturn(Mono.just(data));
+
+        webTestClient
+                .get().uri("/profiles/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isOk();
+
+        final String testedResponse = webTestClient
+                .get().uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // verify
+        assertTrue(testedResponse.contains("user_route_requests_seconds_count{route=\"profile\",status=\"200\",}"));
+    }
+}
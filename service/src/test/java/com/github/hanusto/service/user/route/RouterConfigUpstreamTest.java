@@ -0,0 +1,112 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.route;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.github.hanusto.service.user.test.AbstractFunctionalTest;
+
+/**
+ * Test suite for {@link RouterConfig} with complete chain of providers, WireMock acts as upstream.
+ *
+ * @author Tomas Hanus
+ */
+@ExtendWith({
+        SpringExtension.class
+})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = RouterConfigUpstreamTest.UpstreamInitializer.class)
+class RouterConfigUpstreamTest extends AbstractFunctionalTest {
+
+    private static final String UPSTREAM_PATH = "/" + RouterConfigUpstreamTest.class.getSimpleName() + "/";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void upstreamSetup() {
+        WireMock.reset();
+    }
+
+    @Test
+    void userPostsRoute() {
+        stubFor(get(urlEqualTo(UPSTREAM_PATH + "users/1"))
+                .willReturn(okJson(fileAsString("user-1_response.json"))));
+        stubFor(get(urlEqualTo(UPSTREAM_PATH + "posts?userId=1"))
+                .willReturn(okJson(fileAsString("posts-user-1_response.json"))));
+
+        final String testedResponse = webTestClient
+                .get().uri("/profiles/1/posts")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        // verify, user is resolved without posts, so posts are fetched once, by the stream
+        assertEquals(testedResponse.split("\n").length, 2);
+        WireMock.verify(1, getRequestedFor(urlEqualTo(UPSTREAM_PATH + "users/1")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo(UPSTREAM_PATH + "posts?userId=1")));
+    }
+
+    @Test
+    void userPostsRoute_notFound() {
+        stubFor(get(urlEqualTo(UPSTREAM_PATH + "users/2"))
+                .willReturn(aResponse().withStatus(404)));
+
+        // execute & verify
+        webTestClient
+                .get().uri("/profiles/2/posts")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isNotFound();
+        WireMock.verify(0, getRequestedFor(urlEqualTo(UPSTREAM_PATH + "posts?userId=2")));
+    }
+
+    /**
+     * Points service to WireMock, it is started before context.
+     */
+    static class UpstreamInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(final ConfigurableApplicationContext context) {
+            TestPropertyValues.of("hanusto.user-service.data-provider.baseUrl=" + getWireMockUrl() + UPSTREAM_PATH)
+                              .applyTo(context);
+        }
+    }
+}
@@ -41,7 +41,8 @@ public class AbstractFunctionalTest extends AbstractTest {
      */
     @BeforeAll
     public static void wireMockSetup() {
-        WIREMOCK = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        // delayed responses block container threads until they are sent, also after the test that stubbed them has finished
+        WIREMOCK = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort().containerThreads(50));
         WIREMOCK.start();
         WireMock.configureFor(WIREMOCK.port());
     }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.LogNormal;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+
+import com.github.hanusto.service.user.test.AbstractFunctionalTest;
+
+/**
+ * Parent for load tests, WireMock stubs upstream with injected latency.
+ * <p>
+ * Load is generated against packaged service launched from JAR given by system property {@value #SERVICE_JAR_PROPERTY},
+ * or against already running service given by system property {@value #TARGET_URL_PROPERTY}, that one uses its own
+ * upstream, so latency is not injected.
+ * </p>
+ * <p>
+ * Load tests are tagged {@value #TAG}, so they are not run by default build.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+@Tag(AbstractLoadTest.TAG)
+public abstract class AbstractLoadTest extends AbstractFunctionalTest {
+
+    /**
+     * Tag of load tests.
+     */
+    public static final String TAG = "load";
+    /**
+     * System property with path to executable JAR of service.
+     */
+    public static final String SERVICE_JAR_PROPERTY = "load.serviceJar";
+    /**
+     * System property with URL of running service, e.g. {@code http://localhost:8080}.
+     */
+    public static final String TARGET_URL_PROPERTY = "load.targetUrl";
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private static ServiceProcess service;
+    private static String targetUrl;
+
+    /**
+     * Starts tested service, unless running service is given by system property {@value #TARGET_URL_PROPERTY}.
+     *
+     * @param args arguments of launched service
+     * @throws IOException          if service cannot be launched
+     * @throws InterruptedException if interrupted
+     */
+    protected static void startService(final String... args) throws IOException, InterruptedException {
+        targetUrl = System.getProperty(TARGET_URL_PROPERTY);
+        if (targetUrl != null) {
+            LOG.info("Generating load against running service {}, it does not use stubbed upstream", targetUrl);
+            return;
+        }
+
+        final String jar = System.getProperty(SERVICE_JAR_PROPERTY);
+        if (jar == null) {
+            throw new IllegalStateException("System property " + SERVICE_JAR_PROPERTY + " or " + TARGET_URL_PROPERTY + " must be set");
+        }
+        service = ServiceProcess.launch(new File(jar), STARTUP_TIMEOUT, args);
+        targetUrl = service.getBaseUrl();
+    }
+
+    /**
+     * Stops launched service.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @AfterAll
+    public static void stopService() throws InterruptedException {
+        if (service != null) {
+            service.close();
+            service = null;
+        }
+    }
+
+    /**
+     * Gets URL of tested service.
+     *
+     * @return e.g. {@code http://localhost:8080}
+     */
+    protected static String getTargetUrl() {
+        return targetUrl;
+    }
+
+    /**
+     * Stubs users and posts resources of upstream under {@code path}.
+     *
+     * @param path    context of upstream, starts and ends with slash
+     * @param profile of load with injected latency
+     */
+    protected void stubUpstream(final String path, final LoadProfile profile) {
+        WireMock.stubFor(get(urlPathMatching(path + "users/\\d+"))
+                .willReturn(withLatency(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/user_response.json")), profile)));
+        WireMock.stubFor(get(urlPathEqualTo(path + "posts"))
+                .willReturn(withLatency(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(fileAsString("/posts_response.json")), profile)));
+    }
+
+    private static ResponseDefinitionBuilder withLatency(final ResponseDefinitionBuilder response, final LoadProfile profile) {
+        final long median = profile.getUpstreamLatency().toMillis();
+
+        return profile.getUpstreamLatencySigma() > 0
+                ? response.withRandomDelay(new LogNormal(median, profile.getUpstreamLatencySigma()))
+                : response.withFixedDelay((int) median);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distribution of requested user IDs, IDs are in range {@code [1, userCount]}.
+ *
+ * @author Tomas Hanus
+ */
+@FunctionalInterface
+public interface IdDistribution {
+
+    /**
+     * Draws next ID.
+     *
+     * @param random source of randomness
+     * @return ID of user
+     */
+    long next(Random random);
+
+    /**
+     * Every user is requested with the same probability.
+     *
+     * @param userCount count of users
+     * @return distribution
+     */
+    static IdDistribution uniform(final int userCount) {
+        return random -> random.nextInt(userCount) + 1;
+    }
+
+    /**
+     * Users are requested by Zipf's law, user with ID {@code k} is requested with probability proportional
+     * to {@code 1 / k^exponent}, so few users are hot and most of them are cold.
+     *
+     * @param userCount count of users
+     * @param exponent  of distribution, usually close to 1
+     * @return distribution
+     */
+    static IdDistribution zipf(final int userCount, final double exponent) {
+        final double[] cumulative = new double[userCount];
+        double sum = 0;
+        for (int k = 1; k <= userCount; k++) {
+            sum += 1 / Math.pow(k, exponent);
+            cumulative[k - 1] = sum;
+        }
+        final double total = sum;
+
+        return random -> {
+            final int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            return (index >= 0 ? index : -index - 1) + 1;
+        };
+    }
+}
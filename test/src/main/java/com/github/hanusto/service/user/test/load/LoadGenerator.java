@@ -0,0 +1,157 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Generator of HTTP load by {@link LoadProfile}.
+ * <p>
+ * With given RPS the load is open: requests are scheduled at fixed rate and latency is measured from scheduled time,
+ * so stalls of service are not hidden by workers waiting for it (coordinated omission).
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final int TIMEOUT_MILLIS = 10_000;
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Time for that workers may run after the load ended, enough to let last requests time out.
+     */
+    private static final long TERMINATION_GRACE_SECONDS = 60;
+
+    private final LoadProfile profile;
+
+    /**
+     * New instance.
+     *
+     * @param profile of load
+     */
+    public LoadGenerator(final LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Generates load.
+     *
+     * @param target URL of request for user ID
+     * @return report of measured requests
+     * @throws InterruptedException if interrupted
+     */
+    public LoadReport run(final LongFunction<String> target) throws InterruptedException {
+        LOG.info("Generating load: {}", profile);
+
+        final IdDistribution ids = profile.idDistribution();
+        // histogram resizes itself, stalls corrected for coordinated omission may take arbitrarily long
+        final Recorder recorder = new Recorder(3);
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong sequence = new AtomicLong();
+
+        final long intervalNanos = profile.getRps() > 0 ? TimeUnit.SECONDS.toNanos(1) / profile.getRps() : 0;
+        final long start = System.nanoTime();
+        final long measureFrom = start + profile.getWarmup().toNanos();
+        final long end = measureFrom + profile.getDuration().toNanos();
+
+        final ExecutorService workers = Executors.newFixedThreadPool(profile.getConcurrency());
+        for (int i = 0; i < profile.getConcurrency(); i++) {
+            final Random random = new Random(i);
+            workers.execute(() -> {
+                while (true) {
+                    final long scheduled = intervalNanos > 0 ? start + sequence.getAndIncrement() * intervalNanos : System.nanoTime();
+                    if (scheduled >= end) {
+                        return;
+                    }
+                    final long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+
+                    final boolean success = send(target.apply(ids.next(random)));
+                    final long latency = System.nanoTime() - scheduled;
+
+                    if (scheduled >= measureFrom) {
+                        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                        if (!success) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        workers.shutdown();
+        final boolean complete = workers.awaitTermination(
+                profile.getWarmup().plus(profile.getDuration()).getSeconds() + TERMINATION_GRACE_SECONDS, TimeUnit.SECONDS);
+        if (!complete) {
+            LOG.warn("Workers did not finish in time, report is made of partial data");
+            workers.shutdownNow();
+        }
+
+        final LoadReport report = new LoadReport(profile, recorder.getIntervalHistogram(), errors.get(), complete);
+        LOG.info("Load report: {}", report);
+        return report;
+    }
+
+    /**
+     * Sends request and reads whole response, connections are kept alive by JDK.
+     *
+     * @return {@code true} if service responded successfully
+     */
+    private static boolean send(final String url) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestProperty("Accept", "application/json");
+
+            final int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                drain(body);
+            }
+            return status < 400;
+        } catch (IOException e) {
+            LOG.debug("Request failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static void drain(final InputStream body) throws IOException {
+        if (body == null) {
+            return;
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (body.read(buffer) >= 0) {
+            // response is not needed, only connection must be reusable
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.NonNull;
+
+/**
+ * Profile of generated load.
+ *
+ * @author Tomas Hanus
+ */
+@Data
+public class LoadProfile {
+
+    /**
+     * Distribution of requested IDs.
+     */
+    public enum Distribution {
+        UNIFORM, ZIPF
+    }
+
+    /**
+     * Requests per second, load is generated in closed loop (every worker sends next request when previous one
+     * completed) if it is not positive.
+     */
+    private int rps = 200;
+    /**
+     * Count of concurrent workers.
+     */
+    private int concurrency = 16;
+    /**
+     * Time of measured load.
+     */
+    @NonNull
+    private Duration duration = Duration.ofSeconds(10);
+    /**
+     * Time of load before measurement, e.g. to fill caches and pools.
+     */
+    @NonNull
+    private Duration warmup = Duration.ofSeconds(2);
+    /**
+     * Distribution of requested IDs.
+     */
+    @NonNull
+    private Distribution distribution = Distribution.ZIPF;
+    /**
+     * Count of distinct users.
+     */
+    private int userCount = 1000;
+    /**
+     * Exponent of Zipf distribution.
+     */
+    private double zipfExponent = 1.0;
+    /**
+     * Median of latency injected into upstream responses.
+     */
+    @NonNull
+    private Duration upstreamLatency = Duration.ofMillis(20);
+    /**
+     * Spread of upstream latency (sigma of log normal distribution), fixed latency is injected if it is zero.
+     */
+    private double upstreamLatencySigma = 0.5;
+
+    /**
+     * Creates distribution of requested IDs.
+     *
+     * @return distribution
+     */
+    public IdDistribution idDistribution() {
+        return distribution == Distribution.ZIPF
+                ? IdDistribution.zipf(userCount, zipfExponent)
+                : IdDistribution.uniform(userCount);
+    }
+
+    /**
+     * Overrides profile by system properties {@code load.*}, e.g. {@code -Dload.rps=500}.
+     *
+     * @return this profile
+     */
+    public LoadProfile withSystemProperties() {
+        rps = Integer.getInteger("load.rps", rps);
+        concurrency = Integer.getInteger("load.concurrency", concurrency);
+        duration = Duration.parse(System.getProperty("load.duration", duration.toString()));
+        warmup = Duration.parse(System.getProperty("load.warmup", warmup.toString()));
+        distribution = Distribution.valueOf(System.getProperty("load.distribution", distribution.name()));
+        userCount = Integer.getInteger("load.userCount", userCount);
+        zipfExponent = Double.parseDouble(System.getProperty("load.zipfExponent", String.valueOf(zipfExponent)));
+        upstreamLatency = Duration.parse(System.getProperty("load.upstreamLatency", upstreamLatency.toString()));
+        upstreamLatencySigma = Double.parseDouble(System.getProperty("load.upstreamLatencySigma", String.valueOf(upstreamLatencySigma)));
+        return this;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Report of load test, latencies are corrected for coordinated omission, so they are measured from time
+ * the request was scheduled at, not from time it was sent.
+ *
+ * @author Tomas Hanus
+ */
+public class LoadReport {
+
+    private final LoadProfile profile;
+    private final Histogram latencies;
+    private final long errors;
+    private final boolean complete;
+
+    /**
+     * New instance.
+     *
+     * @param profile   of load
+     * @param latencies of requests in microseconds
+     * @param errors    count of failed requests
+     * @param complete  whether all workers finished, otherwise report is made of partial data
+     */
+    LoadReport(final LoadProfile profile, final Histogram latencies, final long errors, final boolean complete) {
+        this.profile = profile;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.complete = complete;
+    }
+
+    /**
+     * Whether all workers finished in time, report of hung run is made of partial data.
+     *
+     * @return {@code true} if load completed
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets count of measured requests.
+     *
+     * @return count of requests
+     */
+    public long getCount() {
+        return latencies.getTotalCount();
+    }
+
+    /**
+     * Gets achieved throughput.
+     *
+     * @return requests per second
+     */
+    public double getThroughput() {
+        return getCount() / (profile.getDuration().toNanos() / 1e9);
+    }
+
+    /**
+     * Gets ratio of failed requests.
+     *
+     * @return error rate
+     */
+    public double getErrorRate() {
+        return getCount() == 0 ? 0 : (double) errors / getCount();
+    }
+
+    /**
+     * Gets latency at percentile.
+     *
+     * @param percentile e.g. {@code 99.9}
+     * @return latency
+     */
+    public Duration getLatency(final double percentile) {
+        return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(latencies.getValueAtPercentile(percentile)));
+    }
+
+    /**
+     * Asserts that load met objectives.
+     *
+     * @param slo objectives
+     * @throws AssertionError listing all violated objectives
+     */
+    public void assertMeets(final Slo slo) {
+        final List<String> violations = new ArrayList<>();
+
+        if (!complete) {
+            violations.add("workers did not finish, report is incomplete");
+        }
+        checkLatency(violations, "p50", 50, slo.getP50());
+        checkLatency(violations, "p99", 99, slo.getP99());
+        checkLatency(violations, "p99.9", 99.9, slo.getP999());
+        if (getErrorRate() > slo.getErrorRate()) {
+            violations.add(String.format("error rate %.4f > %.4f", getErrorRate(), slo.getErrorRate()));
+        }
+        if (profile.getRps() > 0 && getThroughput() < profile.getRps() * slo.getThroughputRatio()) {
+            violations.add(String.format("throughput %.1f rps < %.1f rps", getThroughput(), profile.getRps() * slo.getThroughputRatio()));
+        }
+
+        if (!violations.isEmpty()) {
+            throw new AssertionError("SLO violated: " + String.join(", ", violations) + System.lineSeparator() + this);
+        }
+    }
+
+    private void checkLatency(final List<String> violations, final String name, final double percentile, final Duration limit) {
+        final Duration latency = getLatency(percentile);
+        if (latency.compareTo(limit) > 0) {
+            violations.add(String.format("%s %d ms > %d ms", name, latency.toMillis(), limit.toMillis()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%srequests=%d, errors=%d, throughput=%.1f rps, p50=%.2f ms, p99=%.2f ms, p99.9=%.2f ms, max=%.2f ms (%s)",
+                complete ? "" : "INCOMPLETE ", getCount(), errors, getThroughput(),
+                latencies.getValueAtPercentile(50) / 1e3,
+                latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3,
+                latencies.getMaxValue() / 1e3,
+                profile);
+    }
+}
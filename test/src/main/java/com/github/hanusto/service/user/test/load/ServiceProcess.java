@@ -0,0 +1,151 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.hanusto.service.user.test.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Packaged service launched as separate JVM, so load test measures the deployable instead of the test JVM.
+ * <p>
+ * Service is started on free port, its output is written to log file next to JAR.
+ * </p>
+ *
+ * @author Tomas Hanus
+ */
+@Slf4j
+public class ServiceProcess implements AutoCloseable {
+
+    private static final String HEALTH_PATH = "/actuator/health";
+    private static final long POLL_MILLIS = 200;
+
+    private final Process process;
+    private final String baseUrl;
+
+    private ServiceProcess(final Process process, final int port) {
+        this.process = process;
+        this.baseUrl = "http://localhost:" + port;
+    }
+
+    /**
+     * Launches executable JAR of service and waits until it is healthy.
+     *
+     * @param jar     executable JAR of service
+     * @param timeout maximum time to wait for service to start
+     * @param args    arguments of service, e.g. {@code --hanusto.user-service.cache.enabled=false}
+     * @return started service
+     * @throws IOException          if service cannot be launched
+     * @throws InterruptedException if interrupted
+     */
+    public static ServiceProcess launch(final File jar, final Duration timeout, final String... args)
+            throws IOException, InterruptedException {
+        if (!jar.isFile()) {
+            throw new IllegalArgumentException("Executable JAR of service does not exist: " + jar + ", package it first");
+        }
+
+        final int port = freePort();
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        command.add("-jar");
+        command.add(jar.getAbsolutePath());
+        command.add("--server.port=" + port);
+        for (final String arg : args) {
+            command.add(arg);
+        }
+
+        final File log = new File(jar.getParentFile(), jar.getName() + "-" + port + ".log");
+        LOG.info("Launching service on port {}, output is written to {}", port, log);
+        final Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+
+        final ServiceProcess service = new ServiceProcess(process, port);
+        try {
+            service.awaitHealthy(timeout);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            service.close();
+            throw e;
+        }
+        return service;
+    }
+
+    /**
+     * Gets URL of started service.
+     *
+     * @return e.g. {@code http://localhost:12345}
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Stops service.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private void awaitHealthy(final Duration timeout) throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Service exited with code " + process.exitValue() + " before it was healthy");
+            }
+            if (isHealthy()) {
+                return;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        throw new IOException("Service was not healthy within " + timeout);
+    }
+
+    private boolean isHealthy() {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + HEALTH_PATH).openConnection();
+            connection.setConnectTimeout((int) POLL_MILLIS);
+            connection.setReadTimeout((int) POLL_MILLIS);
+            try (InputStream ignored = connection.getInputStream()) {
+                return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+            }
+        } catch (IOException e) {
+            // not started yet
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
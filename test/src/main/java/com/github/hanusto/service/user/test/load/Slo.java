@@ -0,0 +1,69 @@
+/*
+ * Copyright 2004-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.hanusto.service.user.test.load;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.NonNull;
+
+/**
+ * Service level objectives that load test must meet.
+ *
+ * @author Tomas Hanus
+ */
+@Data
+public class Slo {
+
+    /**
+     * Maximal median latency.
+     */
+    @NonNull
+    private Duration p50 = Duration.ofMillis(50);
+    /**
+     * Maximal 99th percentile of latency.
+     */
+    @NonNull
+    private Duration p99 = Duration.ofMillis(250);
+    /**
+     * Maximal 99.9th percentile of latency.
+     */
+    @NonNull
+    private Duration p999 = Duration.ofMillis(500);
+    /**
+     * Maximal ratio of failed requests.
+     */
+    private double errorRate = 0.001;
+    /**
+     * Minimal ratio of achieved to requested throughput, applies only to load with given RPS.
+     */
+    private double throughputRatio = 0.95;
+
+    /**
+     * Overrides objectives by system properties {@code slo.*}, e.g. {@code -Dslo.p99=PT0.1S}.
+     *
+     * @return this objectives
+     */
+    public Slo withSystemProperties() {
+        p50 = Duration.parse(System.getProperty("slo.p50", p50.toString()));
+        p99 = Duration.parse(System.getProperty("slo.p99", p99.toString()));
+        p999 = Duration.parse(System.getProperty("slo.p999", p999.toString()));
+        errorRate = Double.parseDouble(System.getProperty("slo.errorRate", String.valueOf(errorRate)));
+        throughputRatio = Double.parseDouble(System.getProperty("slo.throughputRatio", String.valueOf(throughputRatio)));
+        return this;
+    }
+}